@@ -1,5 +1,8 @@
 plugins {
     java
+
+    // micro benchmarks in src/jmh, run with gradlew jmh
+    id("me.champeau.jmh") version "0.7.3"
 }
 
 group = "dev.chang"
@@ -12,6 +15,14 @@ java {
     }
 }
 
+sourceSets {
+    // simulated server load and the network check run from src/loadtest, see gradlew loadTest and networkCheck
+    create("loadtest") {
+        compileClasspath += sourceSets.main.get().output + sourceSets.main.get().compileClasspath
+        runtimeClasspath += sourceSets.main.get().output
+    }
+}
+
 repositories {
     // default dependency repository
     mavenCentral()
@@ -23,6 +34,48 @@ repositories {
 dependencies {
     // compile only because the server provides the paper api at runtime
     compileOnly("io.papermc.paper:paper-api:1.21.8-R0.1-SNAPSHOT")
+
+    // benchmarks run outside a server so they need the api on their own classpath
+    // the store benchmark loads the plugin on a mocked server, same mockbukkit as the load harness
+    jmh("io.papermc.paper:paper-api:1.21.8-R0.1-SNAPSHOT")
+    jmh("org.mockbukkit.mockbukkit:mockbukkit-v1.21:4.0.0")
+
+    // the load harness runs the plugin on a mocked server
+    // mockbukkit is built against one paper release, keep it in step with the paper-api version above
+    "loadtestImplementation"("io.papermc.paper:paper-api:1.21.8-R0.1-SNAPSHOT")
+    "loadtestImplementation"("org.mockbukkit.mockbukkit:mockbukkit-v1.21:4.0.0")
+}
+
+jmh {
+    // report allocations per operation next to the timings
+    profilers.add("gc")
+
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+
+    // keep results as json so two runs can be compared
+    resultFormat.set("JSON")
+}
+
+tasks.register<JavaExec>("loadTest") {
+    group = "verification"
+    description = "Runs the plugin on a simulated server, pass players, days and seed with --args"
+
+    classpath = sourceSets["loadtest"].runtimeClasspath
+    mainClass.set("dev.chang.spl.LoadHarness")
+
+    // plugin data of each run goes to the build folder instead of the project
+    workingDir = layout.buildDirectory.dir("loadtest").get().asFile
+    doFirst { workingDir.mkdirs() }
+}
+
+tasks.register<JavaExec>("networkCheck") {
+    group = "verification"
+    description = "Checks network sync between two nodes sharing one in process transport"
+
+    classpath = sourceSets["loadtest"].runtimeClasspath
+    mainClass.set("dev.chang.spl.NetworkSyncCheck")
 }
 
 tasks.processResources {
@@ -0,0 +1,89 @@
+package dev.chang.spl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/*
+  lookups and updates on the live day table at different player counts
+  getMinutesToday, addMinutesToday and warnedToday of the store are the store lock around exactly these calls,
+  this measures the table alone and PlayerDataStoreBenchmark the same calls through the store
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DayCountersBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int players;
+
+    private DayCounters table;
+    private UUID[] ids;
+    private int next;
+
+    // players that are not in the table, built up front so the probe does not measure allocation
+    private UUID[] absent;
+    private int nextAbsent;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        table = new DayCounters(LocalDate.of(2025, 1, 1));
+        ids = new UUID[players];
+
+        for (int i = 0; i < players; i++) {
+            ids[i] = new UUID(random.nextLong(), random.nextLong());
+            table.load(ids[i], random.nextInt(240), random.nextInt(8));
+        }
+
+        absent = new UUID[players];
+        for (int i = 0; i < players; i++) {
+            UUID id;
+            do {
+                id = new UUID(random.nextLong(), random.nextLong());
+            } while (table.contains(id));
+            absent[i] = id;
+        }
+    }
+
+    // walks the players in order so every call hits a different slot
+    private UUID nextId() {
+        UUID id = ids[next];
+        next = next + 1 == ids.length ? 0 : next + 1;
+        return id;
+    }
+
+    @Benchmark
+    public int getMinutes() {
+        return table.minutes(nextId());
+    }
+
+    @Benchmark
+    public int addMinutes() {
+        UUID id = nextId();
+        return table.setMinutes(id, table.minutes(id) + 1);
+    }
+
+    @Benchmark
+    public boolean warned() {
+        return (table.warned(nextId()) & 2) != 0;
+    }
+
+    // a player that is not stored, the common case for the first lookup of a day
+    @Benchmark
+    public boolean missing() {
+        UUID id = absent[nextAbsent];
+        nextAbsent = nextAbsent + 1 == absent.length ? 0 : nextAbsent + 1;
+        return table.contains(id);
+    }
+}
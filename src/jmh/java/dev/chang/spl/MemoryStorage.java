@@ -0,0 +1,72 @@
+package dev.chang.spl;
+
+import java.time.LocalDate;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/*
+  storage backend for benchmarks that keeps one day in memory
+  loads copy out of the stored table and saves just drop the changes, so a run measures the store and not the disk
+*/
+final class MemoryStorage implements StorageBackend {
+
+    // pulls pending changes from the store
+    private final Supplier<Changes> changes;
+
+    // the only stored day
+    private final DayCounters stored;
+
+    MemoryStorage(Supplier<Changes> changes, DayCounters stored) {
+        this.changes = changes;
+        this.stored = stored;
+    }
+
+    @Override
+    public long open() {
+        return 0L;
+    }
+
+    @Override
+    public synchronized DayCounters loadDay(LocalDate day) {
+        DayCounters c = new DayCounters(day);
+        if (day.equals(stored.day)) {
+            for (int i = 0; i < stored.capacity(); i++) {
+                if (stored.keyAt(i) != null) {
+                    c.load(stored.keyAt(i), stored.minutesAt(i), stored.warnedAt(i));
+                }
+            }
+        }
+        return c;
+    }
+
+    @Override
+    public synchronized DayCounters loadPlayer(UUID id, LocalDate day) {
+        DayCounters c = new DayCounters(day, 2);
+        if (day.equals(stored.day) && stored.contains(id)) {
+            c.load(id, stored.minutes(id), stored.warned(id));
+        }
+        return c;
+    }
+
+    @Override
+    public void requestSave() {
+        changes.get();
+    }
+
+    @Override
+    public synchronized void importDay(DayCounters day) {
+        if (!day.day.equals(stored.day)) {
+            return;
+        }
+        for (int i = 0; i < day.capacity(); i++) {
+            UUID id = day.keyAt(i);
+            if (id != null) {
+                stored.load(id, Math.max(stored.minutes(id), day.minutesAt(i)), stored.warned(id) | day.warnedAt(i));
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+}
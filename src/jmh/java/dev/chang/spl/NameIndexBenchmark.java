@@ -0,0 +1,72 @@
+package dev.chang.spl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/*
+  player name completion and lookup over large name sets
+  complete is what every key press in a /pt player argument costs, find is what each command pays to resolve a name
+  short prefixes match many names and show the cost of the capped walk, long ones mostly miss
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class NameIndexBenchmark {
+
+    @Param({"1000", "10000", "200000"})
+    public int names;
+
+    private static final String LETTERS = "abcdefghijklmnopqrstuvwxyz0123456789_";
+
+    private NameIndex index;
+    private String[] known;
+    private int next;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        index = new NameIndex();
+        known = new String[names];
+
+        for (int i = 0; i < names; i++) {
+            StringBuilder sb = new StringBuilder();
+            int length = 3 + random.nextInt(14);
+            for (int j = 0; j < length; j++) {
+                char c = LETTERS.charAt(random.nextInt(LETTERS.length()));
+                sb.append(j == 0 ? Character.toUpperCase(c) : c);
+            }
+            known[i] = sb.toString();
+            index.put(new UUID(random.nextLong(), random.nextLong()), known[i]);
+        }
+    }
+
+    // typed prefixes, only complete depends on them
+    @State(Scope.Thread)
+    public static class Typed {
+        @Param({"", "s", "st", "stev"})
+        public String prefix;
+    }
+
+    @Benchmark
+    public List<String> complete(Typed typed) {
+        return index.complete(typed.prefix, 50);
+    }
+
+    @Benchmark
+    public UUID find() {
+        String name = known[next];
+        next = next + 1 == known.length ? 0 : next + 1;
+        return index.find(name);
+    }
+}
@@ -0,0 +1,82 @@
+package dev.chang.spl;
+
+import org.mockbukkit.mockbukkit.MockBukkit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/*
+  the per player store calls of the limit check at different player counts
+  every call goes through fetchToday and the store lock like on the server, the backend keeps its day in memory
+  players are preloaded as at pre login, the plugin runs on a mocked server for its clock, zone and warning bits
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PlayerDataStoreBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int players;
+
+    private PlayerDataStore store;
+    private UUID[] ids;
+    private int next;
+
+    @Setup
+    public void setup() {
+        MockBukkit.mock();
+        SimplePlaytimeLimiter plugin = MockBukkit.load(SimplePlaytimeLimiter.class);
+
+        Random random = new Random(42);
+        DayCounters stored = new DayCounters(plugin.getTime().today(plugin.getZone()));
+        ids = new UUID[players];
+
+        for (int i = 0; i < players; i++) {
+            ids[i] = new UUID(random.nextLong(), random.nextLong());
+            stored.load(ids[i], random.nextInt(240), random.nextInt(8));
+        }
+
+        store = new PlayerDataStore(plugin, (folder, changes) -> new MemoryStorage(changes, stored));
+        for (UUID id : ids) {
+            store.preload(id);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        store.close();
+        MockBukkit.unmock();
+    }
+
+    // walks the players in order so every call hits a different slot
+    private UUID nextId() {
+        UUID id = ids[next];
+        next = next + 1 == ids.length ? 0 : next + 1;
+        return id;
+    }
+
+    @Benchmark
+    public int getMinutes() {
+        return store.getMinutesToday(nextId());
+    }
+
+    @Benchmark
+    public void addMinutes() {
+        store.addMinutesToday(nextId(), 1);
+    }
+
+    @Benchmark
+    public boolean warned() {
+        return store.warnedToday(nextId(), 5);
+    }
+}
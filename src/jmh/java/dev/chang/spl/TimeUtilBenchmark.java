@@ -0,0 +1,33 @@
+package dev.chang.spl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+
+/*
+  next midnight lookup used by the wall clock day switch
+  measured in a zone with daylight saving so the zone rules are part of the cost
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TimeUtilBenchmark {
+
+    private final ZoneId zone = ZoneId.of("Europe/Berlin");
+
+    private long millis = Instant.parse("2025-03-29T12:00:00Z").toEpochMilli();
+
+    @Benchmark
+    public Instant nextMidnight() {
+        // moves a minute per call so results cannot be folded into a constant
+        millis += 60_000L;
+        return TimeUtil.nextMidnight(zone, Instant.ofEpochMilli(millis));
+    }
+}
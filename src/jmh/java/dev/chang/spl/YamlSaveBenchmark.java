@@ -0,0 +1,75 @@
+package dev.chang.spl;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/*
+  cost of one players.yml save by file size
+  a save writes the changed days into the yaml tree and renders the whole tree to text,
+  each player adds a minutes line and usually a warnings list on every day the file still holds,
+  so players times days in the file stands for the file size, set by storage.retentionDays on a real server
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class YamlSaveBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int players;
+
+    // days in players.yml including today, the older ones are rendered but not rewritten
+    @Param({"1", "7", "30"})
+    public int days;
+
+    private final WarnBits bits = new WarnBits(null, null);
+
+    private DayCounters day;
+    private YamlConfiguration yaml;
+
+    @Setup
+    public void setup() {
+        bits.register(List.of(15, 5, 1));
+
+        Random random = new Random(42);
+        UUID[] ids = new UUID[players];
+        for (int i = 0; i < players; i++) {
+            ids[i] = new UUID(random.nextLong(), random.nextLong());
+        }
+
+        // the same players on every day, like a server with regulars
+        yaml = new YamlConfiguration();
+        LocalDate today = LocalDate.of(2025, 1, 1);
+        for (int d = days - 1; d > 0; d--) {
+            DayCounters old = new DayCounters(today.minusDays(d));
+            for (UUID id : ids) {
+                old.load(id, random.nextInt(240), random.nextInt(8));
+            }
+            YamlStorage.writeDay(yaml, old, bits);
+        }
+
+        day = new DayCounters(today);
+        for (UUID id : ids) {
+            day.load(id, random.nextInt(240), random.nextInt(8));
+        }
+    }
+
+    // today is rewritten into the kept tree like on every save, so repeated calls stay the same size
+    @Benchmark
+    public String serialize() {
+        YamlStorage.writeDay(yaml, day, bits);
+        return yaml.saveToString();
+    }
+}
@@ -0,0 +1,219 @@
+package dev.chang.spl;
+
+import org.mockbukkit.mockbukkit.MockBukkit;
+import org.mockbukkit.mockbukkit.ServerMock;
+import org.mockbukkit.mockbukkit.entity.PlayerMock;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Random;
+import java.util.UUID;
+
+/*
+  load harness that runs the plugin on a simulated server for whole days
+  thousands of fake players join and quit at random, some idle and get paused, the rest play into their warnings and get kicked at the limit,
+  while the real autosave, bossbar ticker, activity sampler, deadline queue and midnight switch run on the simulated ticks
+  a virtual clock moves 50 ms per tick like a real server, ticks simply run back to back instead of waiting for each other,
+  so every tick based task runs exactly as often per simulated hour as on a server
+  reports the real time per tick, allocations on the server thread and the bytes written to disk
+
+  what the numbers mean
+  tick times and allocations per tick are the plugin's cost per real tick plus the overhead of the mocked server
+  per simulated hour and per day values are valid for tick based work, which is everything on the server thread
+  write-behind saves merge requests within a real time window, a run faster than real time merges more of them,
+  so the number of disk writes is a lower bound while the bytes per write are representative
+
+  usage: gradlew loadTest --args="<players> <days> <seed>"
+*/
+public final class LoadHarness {
+
+    // a simulated player and the mock standing in for their current connection
+    private static final class Sim {
+        final UUID id;
+        final String name;
+        PlayerMock online;
+
+        // idles for the whole session so the plugin pauses their playtime
+        boolean afk;
+
+        Sim(UUID id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+    }
+
+    private final ServerMock server;
+    private final SimplePlaytimeLimiter plugin;
+    private final VirtualTime time;
+    private final Sim[] sims;
+    private final Random random;
+
+    // simulated time per tick, the 20 ticks per second of a real server
+    private static final long TICK_MILLIS = 50L;
+    private static final long TICKS_PER_MINUTE = 60_000L / TICK_MILLIS;
+
+    // chance per simulated minute that an offline player joins or an online player quits
+    private static final double JOIN_PER_MINUTE = 0.01;
+    private static final double QUIT_PER_MINUTE = 0.02;
+
+    // share of sessions spent idle, everyone else is active every minute
+    private static final double AFK_SHARE = 0.1;
+
+    // real cost of each tick and what the server thread allocated during it
+    private final Metrics.Histogram tickNanos = new Metrics.Histogram("tick", "", "Tick", true);
+    private final Metrics.Histogram tickBytes = new Metrics.Histogram("alloc", "", "Allokation pro Tick", false);
+
+    // real time the simulation took, compared with simulated time it tells how much faster than a server it ran
+    private long realNanos;
+
+    private long joins;
+    private long quits;
+    private long refused;
+
+    private LoadHarness(ServerMock server, SimplePlaytimeLimiter plugin, VirtualTime time, int players, long seed) {
+        this.server = server;
+        this.plugin = plugin;
+        this.time = time;
+        this.random = new Random(seed);
+
+        this.sims = new Sim[players];
+        for (int i = 0; i < players; i++) {
+            sims[i] = new Sim(new UUID(seed, i), "load" + i);
+        }
+    }
+
+    public static void main(String[] args) {
+        int players = arg(args, 0, 1000);
+        int days = arg(args, 1, 1);
+        long seed = arg(args, 2, 42);
+
+        // a monday morning so the run also crosses into a new day and fills the week ranking
+        VirtualTime time = new VirtualTime(Instant.parse("2025-06-02T04:00:00Z"));
+        SimplePlaytimeLimiter.timeSource = time;
+
+        ServerMock server = MockBukkit.mock();
+        try {
+            SimplePlaytimeLimiter plugin = MockBukkit.load(SimplePlaytimeLimiter.class);
+            LoadHarness harness = new LoadHarness(server, plugin, time, players, seed);
+            harness.run(days);
+
+            // disabling waits for the final save so its bytes are counted
+            server.getPluginManager().disablePlugin(plugin);
+            harness.report(days);
+        } finally {
+            MockBukkit.unmock();
+            SimplePlaytimeLimiter.timeSource = TimeSource.SYSTEM;
+        }
+    }
+
+    private void run(int days) {
+        long ticks = days * 86_400_000L / TICK_MILLIS;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long began = System.nanoTime();
+
+        for (long tick = 0; tick < ticks; tick++) {
+            time.advanceMillis(TICK_MILLIS);
+
+            long allocated = threads.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime();
+
+            if (tick % TICKS_PER_MINUTE == 0) {
+                simulateMinute();
+            }
+            server.getScheduler().performOneTick();
+
+            tickNanos.since(start);
+            tickBytes.record(threads.getThreadAllocatedBytes(thread) - allocated);
+        }
+        realNanos = System.nanoTime() - began;
+    }
+
+    // joins and quits for one simulated minute, kicked players simply count as offline
+    private void simulateMinute() {
+        for (Sim s : sims) {
+            if (s.online != null && !s.online.isOnline()) {
+                s.online = null;
+            }
+
+            if (s.online == null) {
+                if (random.nextDouble() < JOIN_PER_MINUTE) {
+                    join(s);
+                }
+            } else if (random.nextDouble() < QUIT_PER_MINUTE) {
+                s.online.disconnect();
+                s.online = null;
+                quits++;
+            } else if (!s.afk) {
+                plugin.getActivity().touch(s.id);
+            }
+        }
+    }
+
+    private void join(Sim s) {
+        PlayerMock p = new PlayerMock(server, s.name, s.id);
+        server.addPlayer(p);
+
+        // players without time left are refused at pre login or kicked on join
+        if (p.isOnline()) {
+            s.online = p;
+            s.afk = random.nextDouble() < AFK_SHARE;
+            joins++;
+        } else {
+            refused++;
+        }
+    }
+
+    private void report(int days) {
+        Metrics m = plugin.getMetrics();
+        long gcCount = 0;
+        long gcMillis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcCount += Math.max(0, gc.getCollectionCount());
+            gcMillis += Math.max(0, gc.getCollectionTime());
+        }
+
+        System.out.printf(Locale.ROOT, "simulated %d players over %d day(s), %d ticks of %d ms in %.1f s, %.0fx real time%n",
+            sims.length, days, tickNanos.count(), TICK_MILLIS, realNanos / 1e9,
+            days * 86_400e9 / Math.max(1L, realNanos));
+        System.out.println("joins " + joins + ", quits " + quits + ", refused or kicked on join " + refused);
+        System.out.println(plain(m.describe(tickNanos)));
+        System.out.println(plain(m.describe(tickBytes)));
+        System.out.printf(Locale.ROOT, "server thread allocated %.1f MB per simulated hour, %d gc runs taking %d ms%n",
+            tickBytes.sum() / 1e6 / (days * 24.0), gcCount, gcMillis);
+        // saves merged within a real time window, so faster than real time means fewer and larger writes
+        System.out.printf(Locale.ROOT, "disk writes %d (lower bound), %.1f MB in total, data folder now %.1f MB%n",
+            m.saveBytes.count(), m.saveBytes.sum() / 1e6, size(plugin.getDataFolder()) / 1e6);
+
+        System.out.println("plugin timings:");
+        for (Metrics.Histogram h : m.all) {
+            System.out.println("  " + plain(m.describe(h)));
+        }
+    }
+
+    // chat color codes are dropped for the console
+    private static String plain(String s) {
+        return s.replaceAll("§.", "");
+    }
+
+    private static long size(File f) {
+        if (f.isFile()) {
+            return f.length();
+        }
+        long total = 0;
+        File[] children = f.listFiles();
+        if (children != null) {
+            for (File c : children) {
+                total += size(c);
+            }
+        }
+        return total;
+    }
+
+    private static int arg(String[] args, int i, int fallback) {
+        return args.length > i ? Integer.parseInt(args[i]) : fallback;
+    }
+}
@@ -0,0 +1,40 @@
+package dev.chang.spl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+  in process transport for the network check
+  nodes sharing one instance see each other's deltas like servers sharing one network.db
+*/
+final class MemorySyncTransport implements SyncTransport {
+
+    private record Entry(String node, Delta delta) {
+    }
+
+    // all published deltas, the cursor is the list index
+    private final List<Entry> log = new ArrayList<>();
+
+    @Override
+    public synchronized void publish(String node, List<Delta> deltas) {
+        for (Delta d : deltas) {
+            log.add(new Entry(node, d));
+        }
+    }
+
+    @Override
+    public synchronized Batch poll(String node, long cursor) {
+        List<Delta> out = new ArrayList<>();
+        for (int i = (int) cursor; i < log.size(); i++) {
+            Entry e = log.get(i);
+            if (!e.node.equals(node)) {
+                out.add(e.delta);
+            }
+        }
+        return new Batch(out, log.size());
+    }
+
+    @Override
+    public void close() {
+    }
+}
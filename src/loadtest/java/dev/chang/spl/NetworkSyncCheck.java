@@ -0,0 +1,104 @@
+package dev.chang.spl;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/*
+  two network nodes sharing one in process transport
+  checks that minutes published by one node show up on the other, that a player with many deltas
+  in one poll is reported once, and that minutes a node publishes after its own midnight
+  are kept by a node that has not reached that day yet
+  fails with an assertion error, run with gradlew networkCheck
+*/
+public final class NetworkSyncCheck {
+
+    private static final ZoneId ZONE = ZoneOffset.UTC;
+
+    private static final Logger LOGGER = Logger.getLogger("network-check");
+
+    // how often each player was reported as changed on one node
+    private static final class Changes implements Consumer<UUID> {
+        final Map<UUID, Integer> counts = new HashMap<>();
+
+        @Override
+        public synchronized void accept(UUID id) {
+            counts.merge(id, 1, Integer::sum);
+        }
+
+        synchronized int of(UUID id) {
+            return counts.getOrDefault(id, 0);
+        }
+
+        synchronized void clear() {
+            counts.clear();
+        }
+    }
+
+    public static void main(String[] args) {
+        MemorySyncTransport transport = new MemorySyncTransport();
+
+        // a runs a minute ahead of b so it crosses midnight first
+        VirtualTime timeA = new VirtualTime(Instant.parse("2025-06-02T23:50:00Z"));
+        VirtualTime timeB = new VirtualTime(Instant.parse("2025-06-02T23:49:00Z"));
+        Changes changesB = new Changes();
+
+        NetworkSync a = new NetworkSync(LOGGER, "a", transport, timeA, () -> ZONE, id -> { });
+        NetworkSync b = new NetworkSync(LOGGER, "b", transport, timeB, () -> ZONE, changesB);
+
+        try {
+            UUID player = new UUID(1L, 1L);
+            LocalDate today = LocalDate.of(2025, 6, 2);
+
+            // minutes of one node reach the other but not itself
+            a.add(player, today, 5);
+            a.sync();
+            b.sync();
+            check(b.remoteMinutes(player) == 5, "b sees the 5 minutes a published");
+            check(a.remoteMinutes(player) == 0, "a does not count its own minutes as remote");
+            check(changesB.of(player) == 1, "b reported the player once");
+
+            // several deltas of one player in one poll are one change
+            changesB.clear();
+            for (int i = 0; i < 3; i++) {
+                a.add(player, today, 1);
+                a.sync();
+            }
+            b.sync();
+            check(b.remoteMinutes(player) == 8, "b sums every delta of the poll");
+            check(changesB.of(player) == 1, "b reported the player once per poll, not once per delta");
+
+            // a passes midnight and publishes for the new day while b is still on the old one
+            timeA.advanceMillis(15 * 60_000L);
+            timeB.advanceMillis(5 * 60_000L);
+            LocalDate tomorrow = today.plusDays(1);
+            a.add(player, tomorrow, 4);
+            a.sync();
+            b.sync();
+            check(b.remoteMinutes(player) == 8, "b keeps its old day until its own midnight");
+
+            // once b reaches the new day the early minutes are there
+            timeB.advanceMillis(10 * 60_000L);
+            b.sync();
+            check(b.remoteMinutes(player) == 4, "b kept the minutes a published before b's midnight");
+
+            System.out.println("network check passed");
+        } finally {
+            a.close();
+            b.close();
+        }
+    }
+
+    private static void check(boolean ok, String what) {
+        if (!ok) {
+            throw new AssertionError(what);
+        }
+        System.out.println("ok: " + what);
+    }
+}
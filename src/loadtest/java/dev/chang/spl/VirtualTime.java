@@ -0,0 +1,40 @@
+package dev.chang.spl;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+  clock the load harness moves forward by hand
+  wall clock and monotonic clock advance together so sessions, deadlines and the day switch all see the same time
+  background watchers check it every few real milliseconds so a simulated midnight is noticed right away
+*/
+final class VirtualTime implements TimeSource {
+
+    private final long startMillis;
+
+    // nanos since the start, read from the clock thread and the server thread
+    private final AtomicLong elapsed = new AtomicLong();
+
+    VirtualTime(Instant start) {
+        this.startMillis = start.toEpochMilli();
+    }
+
+    void advanceMillis(long millis) {
+        elapsed.addAndGet(millis * 1_000_000L);
+    }
+
+    @Override
+    public long millis() {
+        return startMillis + elapsed.get() / 1_000_000L;
+    }
+
+    @Override
+    public long nanos() {
+        return elapsed.get();
+    }
+
+    @Override
+    public long maxWaitMillis() {
+        return 2L;
+    }
+}
@@ -0,0 +1,121 @@
+package dev.chang.spl;
+
+import io.papermc.paper.event.player.AsyncChatEvent;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerCommandPreprocessEvent;
+import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.event.player.PlayerMoveEvent;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+  last activity per online player so idle players stop using up their daily limit
+  moving to another block, chat, interactions and commands count as activity
+  an event only stores the sampler's last clock reading in the player's slot, no clock call, no lock and no allocation,
+  so the move event stays cheap with hundreds of players walking every tick
+  a sampler on the global thread compares the slots with the idle threshold once a second
+  and pauses or resumes the player's session at the moment the player went idle or came back
+  with the threshold at zero nobody is ever paused
+*/
+final class ActivityTracker implements Listener {
+
+    private static final long NANOS_PER_MINUTE = 60_000_000_000L;
+
+    // monotonic time of the player's last activity, written by the player's thread and read by the sampler
+    private static final class Activity {
+        final UUID id;
+        volatile long last;
+
+        Activity(UUID id, long last) {
+            this.id = id;
+            this.last = last;
+        }
+    }
+
+    private final TimeSource time;
+
+    private final SessionTracker sessions;
+
+    private final Map<UUID, Activity> players = new ConcurrentHashMap<>();
+
+    // clock reading of the last sample, events copy it instead of reading the clock
+    private volatile long now;
+
+    // idle time after which a session pauses, zero or less turns pausing off
+    private volatile long idleNanos;
+
+    ActivityTracker(TimeSource time, SessionTracker sessions) {
+        this.time = time;
+        this.sessions = sessions;
+        this.now = time.nanos();
+    }
+
+    void configure(int idleMinutes) {
+        this.idleNanos = Math.max(0, idleMinutes) * NANOS_PER_MINUTE;
+    }
+
+    // starts tracking a player whose session just started, joining counts as activity
+    void add(UUID id) {
+        players.put(id, new Activity(id, time.nanos()));
+    }
+
+    void remove(UUID id) {
+        players.remove(id);
+    }
+
+    void clear() {
+        players.clear();
+    }
+
+    // records activity of an online player
+    void touch(UUID id) {
+        Activity a = players.get(id);
+        if (a != null) {
+            a.last = now;
+        }
+    }
+
+    // pauses sessions of players idle past the threshold and resumes those who became active again
+    // the session ignores a pause or resume it is already in, so every player is simply checked each sample
+    void sample() {
+        long t = time.nanos();
+        now = t;
+
+        long idle = idleNanos;
+        for (Activity a : players.values()) {
+            long last = a.last;
+            if (idle > 0 && t - last >= idle) {
+                sessions.pause(a.id, last + idle);
+            } else {
+                sessions.resume(a.id, last);
+            }
+        }
+    }
+
+    // rotating the camera in place does not count, otherwise idle players would never pause
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onMove(PlayerMoveEvent e) {
+        if (e.hasChangedBlock()) {
+            touch(e.getPlayer().getUniqueId());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChat(AsyncChatEvent e) {
+        touch(e.getPlayer().getUniqueId());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onInteract(PlayerInteractEvent e) {
+        touch(e.getPlayer().getUniqueId());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onCommand(PlayerCommandPreprocessEvent e) {
+        touch(e.getPlayer().getUniqueId());
+    }
+}
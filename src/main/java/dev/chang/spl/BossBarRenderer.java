@@ -0,0 +1,151 @@
+package dev.chang.spl;
+
+import org.bukkit.Bukkit;
+import org.bukkit.boss.BarColor;
+import org.bukkit.boss.BarStyle;
+import org.bukkit.boss.BossBar;
+import org.bukkit.entity.Player;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+  bossbar renderer that remembers what each bar last showed
+  every setter on a bar sends a packet so only fields that changed are pushed
+  titles are rendered once per remaining minute value and kept until the config changes
+  with an unchanged minute value a render call sends nothing and allocates nothing
+  a bar is only touched from its player's thread, config changes swap in a new immutable style
+*/
+final class BossBarRenderer {
+
+    // config used for rendering and the titles rendered with it, filled on first use
+    private static final class Style {
+        final String template;
+        final int limit;
+        final int greenAbove;
+        final int yellowAbove;
+        final String[] titles;
+        volatile String unlimitedTitle;
+
+        Style(String template, int limit, int greenAbove, int yellowAbove) {
+            this.template = template;
+            this.limit = limit;
+            this.greenAbove = greenAbove;
+            this.yellowAbove = yellowAbove;
+            this.titles = new String[Math.max(0, limit) + 1];
+        }
+    }
+
+    // last values sent for one player's bar
+    private static final class State {
+        final BossBar bar;
+        Style style;
+        int remaining = -1;
+        boolean unlimited;
+        String title;
+        double progress = -1d;
+        BarColor color;
+
+        State(BossBar bar) {
+            this.bar = bar;
+        }
+    }
+
+    private final Map<UUID, State> states = new ConcurrentHashMap<>();
+
+    private volatile Style style = new Style("", 0, 0, 0);
+
+    // applies new ui config, every bar renders again on its next update because its style is outdated
+    void configure(String template, int limit, int greenAbove, int yellowAbove) {
+        this.style = new Style(template == null ? "" : template, limit, greenAbove, yellowAbove);
+    }
+
+    // shows the bar for a player and pushes only what changed since the last call
+    void render(Player p, int remaining, boolean unlimited) {
+        Style st = style;
+        State s = states.get(p.getUniqueId());
+        if (s == null) {
+            s = new State(Bukkit.createBossBar("", BarColor.GREEN, BarStyle.SEGMENTED_10));
+            s.bar.addPlayer(p);
+            s.bar.setVisible(true);
+            states.put(p.getUniqueId(), s);
+        } else if (s.style == st && s.remaining == remaining && s.unlimited == unlimited) {
+            return;
+        }
+
+        s.style = st;
+        s.remaining = remaining;
+        s.unlimited = unlimited;
+
+        String title = title(st, remaining, unlimited);
+        if (!title.equals(s.title)) {
+            s.title = title;
+            s.bar.setTitle(title);
+        }
+
+        double progress = unlimited
+            ? 1.0
+            : Math.max(0d, Math.min(1d, (remaining / (double) st.limit)));
+        if (progress != s.progress) {
+            s.progress = progress;
+            s.bar.setProgress(progress);
+        }
+
+        BarColor color = unlimited
+            ? BarColor.BLUE
+            : (remaining > st.greenAbove) ? BarColor.GREEN
+            : (remaining > st.yellowAbove) ? BarColor.YELLOW
+            : BarColor.RED;
+        if (color != s.color) {
+            s.color = color;
+            s.bar.setColor(color);
+        }
+    }
+
+    // removes a player's bar if present
+    void hide(UUID id) {
+        State s = states.remove(id);
+        if (s != null) {
+            s.bar.removeAll();
+            s.bar.setVisible(false);
+        }
+    }
+
+    void clear() {
+        for (State s : states.values()) {
+            s.bar.removeAll();
+            s.bar.setVisible(false);
+        }
+        states.clear();
+    }
+
+    // show infinity for unlimited players
+    // two threads may render the same title at once, both results are equal so either may win
+    private static String title(Style st, int remaining, boolean unlimited) {
+        if (unlimited) {
+            String t = st.unlimitedTitle;
+            if (t == null) {
+                t = colorize(st.template.replace("{remaining}", "∞"));
+                st.unlimitedTitle = t;
+            }
+            return t;
+        }
+
+        if (remaining < 0 || remaining >= st.titles.length) {
+            return colorize(st.template.replace("{remaining}", String.valueOf(remaining)));
+        }
+
+        String t = st.titles[remaining];
+        if (t == null) {
+            t = colorize(st.template.replace("{remaining}", String.valueOf(remaining)));
+            st.titles[remaining] = t;
+        }
+        return t;
+    }
+
+    // allow legacy color codes in bossbar title
+    private static String colorize(String s) {
+        return s.replace('&', '§');
+    }
+}
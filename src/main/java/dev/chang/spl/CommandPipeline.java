@@ -0,0 +1,105 @@
+package dev.chang.spl;
+
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/*
+  runs the slow part of a /pt command on a small worker pool
+  name lookups and storage reads happen on a worker and the reply comes back on the sender's thread,
+  where chat output and changes to online players are safe
+  each sender may only have a few commands running so a spamming admin cannot queue up work
+*/
+final class CommandPipeline {
+
+    // work that may block, runs on a worker thread
+    interface Job<T> {
+        T run() throws Exception;
+    }
+
+    // commands a single sender may have running at once
+    private static final int MAX_IN_FLIGHT = 2;
+
+    private final Logger logger;
+
+    private final TaskScheduler tasks;
+
+    private final ExecutorService workers;
+
+    // running commands per sender
+    private final Map<String, Integer> inFlight = new ConcurrentHashMap<>();
+
+    CommandPipeline(Logger logger, TaskScheduler tasks, int threads) {
+        this.logger = logger;
+        this.tasks = tasks;
+
+        AtomicInteger n = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, "SimplePlaytimeLimiter-command-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // runs work on a worker and hands its result to reply on the sender's thread
+    // refuses the command if the sender already has too many running
+    <T> void submit(CommandSender sender, Job<T> work, Consumer<T> reply) {
+        String key = key(sender);
+        if (!acquire(key)) {
+            sender.sendMessage("§cBitte warte, bis deine letzten Befehle fertig sind.");
+            return;
+        }
+
+        try {
+            workers.execute(() -> {
+                try {
+                    T result = work.run();
+                    tasks.runForSender(sender, () -> reply.accept(result));
+                } catch (Exception e) {
+                    logger.warning("/pt command failed: " + e);
+                    tasks.runForSender(sender, () -> sender.sendMessage("§cBefehl fehlgeschlagen: " + e.getMessage()));
+                } finally {
+                    release(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            release(key);
+        }
+    }
+
+    // drops queued commands, running ones finish but their replies may be lost
+    void close() {
+        workers.shutdownNow();
+    }
+
+    // counts a command for the sender unless the limit is reached
+    private boolean acquire(String key) {
+        boolean[] ok = {false};
+        inFlight.compute(key, (k, n) -> {
+            int running = n == null ? 0 : n;
+            if (running >= MAX_IN_FLIGHT) {
+                return n;
+            }
+            ok[0] = true;
+            return running + 1;
+        });
+        return ok[0];
+    }
+
+    // the entry is dropped once the sender has nothing running
+    private void release(String key) {
+        inFlight.computeIfPresent(key, (k, n) -> n <= 1 ? null : n - 1);
+    }
+
+    private static String key(CommandSender sender) {
+        return sender instanceof Player p ? p.getUniqueId().toString() : sender.getName();
+    }
+}
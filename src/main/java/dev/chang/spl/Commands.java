@@ -7,14 +7,27 @@ import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.List;
 import java.util.UUID;
 
 /*
   handles the /pt command for admins
   manages playtime inspection edits daily limit updates and whitelist entries
+  player lookups and storage access run on the command pipeline, the reply and changes to online players
+  come back on the sender's thread so a command against an offline player never stalls the tick
 */
 public class Commands implements CommandExecutor {
 
+    // a resolved player and their minutes for today
+    private record Usage(UUID id, int minutes) {
+    }
+
+    // most lines a ranking answer prints into chat
+    private static final int MAX_LINES = 100;
+
     // main plugin reference for store config and runtime state
     private final SimplePlaytimeLimiter plugin;
 
@@ -34,42 +47,76 @@ public class Commands implements CommandExecutor {
 
         // show help if no subcommand is provided
         if (args.length == 0) {
-            sender.sendMessage("§7/pt get <spieler|uuid>");
+            sender.sendMessage("§7/pt get <spieler|uuid> [datum]");
             sender.sendMessage("§7/pt set <spieler|uuid> <min>");
             sender.sendMessage("§7/pt limit <minuten>");
+            sender.sendMessage("§7/pt top [day|week] [anzahl]");
+            sender.sendMessage("§7/pt list --over <min>");
             sender.sendMessage("§7/pt whitelist <add|remove|list> <spieler|uuid>");
             sender.sendMessage("§7/pt whitelist addme");
             sender.sendMessage("§7/pt reload");
+            sender.sendMessage("§7/pt stats");
+            sender.sendMessage("§7/pt migrate");
             return true;
         }
 
-        // supported subcommands are get set limit whitelist reload
+        // supported subcommands are get set limit top list whitelist reload stats migrate
         switch (args[0].toLowerCase()) {
             case "get": {
-                // usage /pt get <player|uuid>
+                // usage /pt get <player|uuid> [yyyy-mm-dd]
                 if (args.length < 2) {
-                    sender.sendMessage("§cNutzung: /pt get <spieler|uuid>");
+                    sender.sendMessage("§cNutzung: /pt get <spieler|uuid> [datum]");
                     return true;
                 }
 
-                UUID id = resolveUuid(args[1]);
-                if (id == null) {
-                    sender.sendMessage("§cSpieler/UUID nicht gefunden: " + args[1]);
+                String target = args[1];
+
+                // optional date looks up a past day which may live on disk or in the archive
+                if (args.length >= 3) {
+                    LocalDate day;
+                    try {
+                        day = LocalDate.parse(args[2]);
+                    } catch (DateTimeParseException e) {
+                        sender.sendMessage("§cDatum muss im Format JJJJ-MM-TT sein.");
+                        return true;
+                    }
+
+                    plugin.getCommands().submit(sender, () -> {
+                        UUID id = resolveUuid(target);
+                        if (id == null) {
+                            return "§cSpieler/UUID nicht gefunden: " + target;
+                        }
+
+                        try {
+                            int minutes = plugin.getStore().getMinutesOn(id, day);
+                            return "§aAm §e" + day + "§a: §e" + minutes + "§a Minuten.";
+                        } catch (IOException e) {
+                            return "§cVerlauf konnte nicht gelesen werden: " + e.getMessage();
+                        }
+                    }, sender::sendMessage);
                     return true;
                 }
 
-                int used = plugin.getStore().getMinutesToday(id);
+                plugin.getCommands().submit(sender, () -> {
+                    UUID id = resolveUuid(target);
+                    return id == null ? null : new Usage(id, plugin.getStore().getMinutesToday(id) + plugin.getRemoteMinutes(id));
+                }, usage -> {
+                    if (usage == null) {
+                        sender.sendMessage("§cSpieler/UUID nicht gefunden: " + target);
+                        return;
+                    }
 
-                // treat whitelist and spl.bypass as unlimited
-                boolean isWhitelisted = plugin.getWhitelist().contains(id);
-                Player online = Bukkit.getPlayer(id);
-                boolean hasBypass = online != null && online.hasPermission("spl.bypass");
+                    // treat whitelist and spl.bypass as unlimited
+                    boolean isWhitelisted = plugin.getWhitelist().contains(usage.id());
+                    Player online = Bukkit.getPlayer(usage.id());
+                    boolean hasBypass = online != null && online.hasPermission("spl.bypass");
 
-                if (isWhitelisted || hasBypass) {
-                    sender.sendMessage("§aHeute: §e" + used + "§a Minuten. §7(Limit: §aunbegrenzt§7 – Whitelist/Berechtigung)");
-                } else {
-                    sender.sendMessage("§aHeute: §e" + used + "§a / §e" + plugin.getDailyLimitMin() + " §aMinuten.");
-                }
+                    if (isWhitelisted || hasBypass) {
+                        sender.sendMessage("§aHeute: §e" + usage.minutes() + "§a Minuten. §7(Limit: §aunbegrenzt§7 – Whitelist/Berechtigung)");
+                    } else {
+                        sender.sendMessage("§aHeute: §e" + usage.minutes() + "§a / §e" + plugin.getDailyLimitMin() + " §aMinuten.");
+                    }
+                });
                 return true;
             }
 
@@ -80,12 +127,6 @@ public class Commands implements CommandExecutor {
                     return true;
                 }
 
-                UUID id = resolveUuid(args[1]);
-                if (id == null) {
-                    sender.sendMessage("§cSpieler/UUID nicht gefunden: " + args[1]);
-                    return true;
-                }
-
                 int min;
                 try {
                     min = Integer.parseInt(args[2]);
@@ -94,15 +135,27 @@ public class Commands implements CommandExecutor {
                     return true;
                 }
 
-                plugin.getStore().setMinutesToday(id, min);
-                sender.sendMessage("§aHeute für §e" + args[1] + "§a gesetzt auf §e" + min + "§a Minuten.");
+                String target = args[1];
+                plugin.getCommands().submit(sender, () -> {
+                    UUID id = resolveUuid(target);
+                    if (id != null) {
+                        plugin.getStore().setMinutesToday(id, min);
+                    }
+                    return id;
+                }, id -> {
+                    if (id == null) {
+                        sender.sendMessage("§cSpieler/UUID nicht gefunden: " + target);
+                        return;
+                    }
+                    sender.sendMessage("§aHeute für §e" + target + "§a gesetzt auf §e" + min + "§a Minuten.");
 
-                // if the player is online reset session baseline and enforce immediately
-                Player p = Bukkit.getPlayer(id);
-                if (p != null) {
-                    plugin.getSessionStartMap().put(id, System.currentTimeMillis());
-                    plugin.enforceLimit(p);
-                }
+                    // if the player is online reset session baseline and enforce immediately
+                    Player p = Bukkit.getPlayer(id);
+                    if (p != null) {
+                        plugin.getSessions().reset(id);
+                        plugin.scheduleEnforce(p);
+                    }
+                });
                 return true;
             }
 
@@ -121,15 +174,91 @@ public class Commands implements CommandExecutor {
                     return true;
                 }
 
-                // persist new limit and reload runtime config values
+                // apply the new limit right away, the file is written in the background
                 plugin.getConfig().set("dailyLimitMinutes", min);
-                plugin.saveConfig();
-                plugin.reloadLocalConfig();
+                plugin.saveConfigAsync();
+                plugin.applyConfig();
 
                 sender.sendMessage("§aTageslimit auf §e" + min + "§a Minuten gesetzt.");
                 return true;
             }
 
+            case "top": {
+                // usage /pt top [day|week] [n]
+                boolean week = false;
+                int n = 10;
+                for (int i = 1; i < args.length; i++) {
+                    String a = args[i].toLowerCase();
+                    if (a.equals("day") || a.equals("week")) {
+                        week = a.equals("week");
+                        continue;
+                    }
+                    try {
+                        n = Math.max(1, Math.min(MAX_LINES, Integer.parseInt(a)));
+                    } catch (NumberFormatException e) {
+                        sender.sendMessage("§cNutzung: /pt top [day|week] [anzahl]");
+                        return true;
+                    }
+                }
+
+                RankingIndex ranking = plugin.getStore().getRanking();
+                if (!ranking.isReady()) {
+                    sender.sendMessage("§7Die Rangliste wird noch aufgebaut, bitte gleich noch einmal versuchen.");
+                    return true;
+                }
+
+                List<RankingIndex.Entry> top = ranking.top(week, n);
+                if (top.isEmpty()) {
+                    sender.sendMessage(week ? "§7Diese Woche hat noch niemand gespielt." : "§7Heute hat noch niemand gespielt.");
+                    return true;
+                }
+
+                sender.sendMessage("§aMeiste Spielzeit " + (week ? "diese Woche" : "heute") + ":");
+                int rank = 1;
+                for (RankingIndex.Entry e : top) {
+                    sender.sendMessage("§7" + rank++ + ". §e" + printable(e.id()) + " §7– §e" + e.minutes() + "§7 min");
+                }
+                return true;
+            }
+
+            case "list": {
+                // usage /pt list --over <min>
+                if (args.length < 3 || !args[1].equalsIgnoreCase("--over")) {
+                    sender.sendMessage("§cNutzung: /pt list --over <min>");
+                    return true;
+                }
+
+                int min;
+                try {
+                    min = Integer.parseInt(args[2]);
+                } catch (NumberFormatException e) {
+                    sender.sendMessage("§cMinuten sind keine Zahl.");
+                    return true;
+                }
+
+                RankingIndex ranking = plugin.getStore().getRanking();
+                if (!ranking.isReady()) {
+                    sender.sendMessage("§7Die Rangliste wird noch aufgebaut, bitte gleich noch einmal versuchen.");
+                    return true;
+                }
+
+                List<RankingIndex.Entry> over = ranking.over(false, min);
+                if (over.isEmpty()) {
+                    sender.sendMessage("§7Heute hat niemand mehr als §e" + min + "§7 Minuten gespielt.");
+                    return true;
+                }
+
+                sender.sendMessage("§aHeute mehr als §e" + min + "§a Minuten: §e" + over.size() + "§a Spieler");
+                for (int i = 0; i < over.size() && i < MAX_LINES; i++) {
+                    RankingIndex.Entry e = over.get(i);
+                    sender.sendMessage("§e" + printable(e.id()) + " §7– §e" + e.minutes() + "§7 min");
+                }
+                if (over.size() > MAX_LINES) {
+                    sender.sendMessage("§7… und §e" + (over.size() - MAX_LINES) + "§7 weitere.");
+                }
+                return true;
+            }
+
             case "whitelist": {
                 // usage /pt whitelist <add|remove|list|addme> [player|uuid]
                 if (args.length < 2) {
@@ -166,13 +295,10 @@ public class Commands implements CommandExecutor {
                         boolean first = true;
 
                         for (UUID id : plugin.getWhitelist()) {
-                            OfflinePlayer op = Bukkit.getOfflinePlayer(id);
-                            String name = (op != null && op.getName() != null) ? op.getName() : id.toString();
-
                             if (!first) {
                                 sb.append("§7, ");
                             }
-                            sb.append("§e").append(name);
+                            sb.append("§e").append(printable(id));
                             first = false;
                         }
 
@@ -187,18 +313,20 @@ public class Commands implements CommandExecutor {
                             return true;
                         }
 
-                        UUID id = resolveUuid(args[2]);
-                        if (id == null) {
-                            sender.sendMessage("§cSpieler/UUID nicht gefunden: §e" + args[2]);
-                            return true;
-                        }
+                        String target = args[2];
+                        plugin.getCommands().submit(sender, () -> resolveUuid(target), id -> {
+                            if (id == null) {
+                                sender.sendMessage("§cSpieler/UUID nicht gefunden: §e" + target);
+                                return;
+                            }
 
-                        if (plugin.getWhitelist().add(id)) {
-                            persistWhitelist();
-                            sender.sendMessage("§aZur Whitelist hinzugefügt: §e" + printable(id));
-                        } else {
-                            sender.sendMessage("§7War bereits auf der Whitelist: §e" + printable(id));
-                        }
+                            if (plugin.getWhitelist().add(id)) {
+                                persistWhitelist();
+                                sender.sendMessage("§aZur Whitelist hinzugefügt: §e" + printable(id));
+                            } else {
+                                sender.sendMessage("§7War bereits auf der Whitelist: §e" + printable(id));
+                            }
+                        });
                         return true;
                     }
 
@@ -209,18 +337,20 @@ public class Commands implements CommandExecutor {
                             return true;
                         }
 
-                        UUID id = resolveUuid(args[2]);
-                        if (id == null) {
-                            sender.sendMessage("§cSpieler/UUID nicht gefunden: " + args[2]);
-                            return true;
-                        }
+                        String target = args[2];
+                        plugin.getCommands().submit(sender, () -> resolveUuid(target), id -> {
+                            if (id == null) {
+                                sender.sendMessage("§cSpieler/UUID nicht gefunden: " + target);
+                                return;
+                            }
 
-                        if (plugin.getWhitelist().remove(id)) {
-                            persistWhitelist();
-                            sender.sendMessage("§aVon der Whitelist entfernt: §e" + printable(id));
-                        } else {
-                            sender.sendMessage("§7War nicht auf der Whitelist: §e" + printable(id));
-                        }
+                            if (plugin.getWhitelist().remove(id)) {
+                                persistWhitelist();
+                                sender.sendMessage("§aVon der Whitelist entfernt: §e" + printable(id));
+                            } else {
+                                sender.sendMessage("§7War nicht auf der Whitelist: §e" + printable(id));
+                            }
+                        });
                         return true;
                     }
 
@@ -232,8 +362,33 @@ public class Commands implements CommandExecutor {
 
             case "reload": {
                 // reload config.yml values into runtime variables
-                plugin.reloadLocalConfig();
-                sender.sendMessage("§aKonfiguration neu geladen.");
+                reload(sender);
+                return true;
+            }
+
+            case "stats": {
+                // timings since startup, percentiles are read from the histograms without stopping writers
+                Metrics m = plugin.getMetrics();
+                sender.sendMessage("§aLaufzeiten seit dem Start:");
+                for (Metrics.Histogram h : m.all) {
+                    sender.sendMessage(m.describe(h));
+                }
+                return true;
+            }
+
+            case "migrate": {
+                // one shot copy of players.yml into the configured storage backend
+                // runs off the main thread because it reads the whole file
+                sender.sendMessage("§7Migration von players.yml gestartet…");
+
+                plugin.getCommands().submit(sender, () -> {
+                    try {
+                        int rows = plugin.getStore().importYaml();
+                        return "§aMigration abgeschlossen: §e" + rows + "§a Einträge übernommen.";
+                    } catch (IOException e) {
+                        return "§cMigration fehlgeschlagen: " + e.getMessage();
+                    }
+                }, sender::sendMessage);
                 return true;
             }
 
@@ -243,9 +398,22 @@ public class Commands implements CommandExecutor {
         }
     }
 
+    // the file is written and read on a command worker so a slow disk never stalls the server thread
+    // the values are applied on the global thread, a config changed in the meantime is simply read again
+    private void reload(CommandSender sender) {
+        plugin.getCommands().submit(sender, plugin::readLocalConfig, read -> plugin.getTasks().runGlobal(() -> {
+            if (plugin.applyLocalConfig(read)) {
+                sender.sendMessage("§aKonfiguration neu geladen.");
+            } else {
+                reload(sender);
+            }
+        }));
+    }
+
     /*
       resolves a player name or uuid string to a uuid
-      order is uuid string exact online name case insensitive online match cached offline match offline scan and final bukkit fallback
+      runs on a command worker because the last fallback may ask mojang for the profile
+      order is uuid string then the name index then bukkit's user cache and a final bukkit fallback for players who never joined
     */
     private UUID resolveUuid(String input) {
         // try parsing as uuid first
@@ -254,32 +422,18 @@ public class Commands implements CommandExecutor {
         } catch (IllegalArgumentException ignore) {
         }
 
-        // exact online player name lookup
-        Player exact = Bukkit.getPlayerExact(input);
-        if (exact != null) {
-            return exact.getUniqueId();
-        }
-
-        // case insensitive online match
-        for (Player p : Bukkit.getOnlinePlayers()) {
-            if (p.getName().equalsIgnoreCase(input)) {
-                return p.getUniqueId();
-            }
+        // every player seen on this server, case insensitive
+        UUID indexed = plugin.getNames().find(input);
+        if (indexed != null) {
+            return indexed;
         }
 
-        // cached offline player if available
+        // cached offline player if available, covers the time before the index is built
         OfflinePlayer cached = Bukkit.getOfflinePlayerIfCached(input);
         if (cached != null && cached.getUniqueId() != null) {
             return cached.getUniqueId();
         }
 
-        // scan offline players list for a name match
-        for (OfflinePlayer op : Bukkit.getOfflinePlayers()) {
-            if (op.getName() != null && op.getName().equalsIgnoreCase(input)) {
-                return op.getUniqueId();
-            }
-        }
-
         // last fallback may return a uuid even if the player never joined
         OfflinePlayer op = Bukkit.getOfflinePlayer(input);
         if (op != null && (op.hasPlayedBefore() || (op.getName() != null && op.getName().equals(input)))) {
@@ -291,8 +445,8 @@ public class Commands implements CommandExecutor {
 
     // prefer player name for chat output otherwise print the uuid
     private String printable(UUID id) {
-        OfflinePlayer op = Bukkit.getOfflinePlayer(id);
-        return (op != null && op.getName() != null) ? op.getName() : id.toString();
+        String name = plugin.getNames().name(id);
+        return name != null ? name : id.toString();
     }
 
     // persist whitelist uuids into config.yml under the key whitelist
@@ -305,6 +459,9 @@ public class Commands implements CommandExecutor {
         }
 
         plugin.getConfig().set("whitelist", list);
-        plugin.saveConfig();
+        plugin.saveConfigAsync();
+
+        // players that lost or gained the exemption get their deadlines recomputed
+        plugin.enforceAll();
     }
 }
@@ -0,0 +1,265 @@
+package dev.chang.spl;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+/*
+  per player counters for a single day
+  open addressing table keyed by uuid with primitive minute counters and a warning bitmask per player
+  lookups compare the two uuid halves directly so reads never allocate
+  entries are only removed when an offline player is evicted, using backward shift deletion
+  changed slots are flagged so backends only write what changed since the last save
+  not thread safe, callers guard access
+*/
+final class DayCounters {
+
+    // day these counters belong to and its yaml key computed once
+    final LocalDate day;
+    final String key;
+
+    // slot arrays, a null key marks an empty slot
+    private UUID[] keys;
+    private long[] msb;
+    private long[] lsb;
+    private int[] minutes;
+    private int[] warned;
+    private boolean[] dirty;
+
+    // number of used and of changed slots
+    private int size;
+    private int dirtyCount;
+
+    DayCounters(LocalDate day) {
+        this(day, 64);
+    }
+
+    DayCounters(LocalDate day, int capacity) {
+        this.day = day;
+        this.key = day.toString();
+        allocate(capacity);
+    }
+
+    // true if the player has an entry
+    boolean contains(UUID id) {
+        return find(id) >= 0;
+    }
+
+    // true if the player has changes not yet taken by a backend
+    boolean isDirty(UUID id) {
+        int i = find(id);
+        return i >= 0 && dirty[i];
+    }
+
+    // minutes stored for a player or zero
+    int minutes(UUID id) {
+        int i = find(id);
+        return i < 0 ? 0 : minutes[i];
+    }
+
+    // warning bitmask for a player or zero
+    int warned(UUID id) {
+        int i = find(id);
+        return i < 0 ? 0 : warned[i];
+    }
+
+    // sets minutes for a player and returns the previous value
+    int setMinutes(UUID id, int value) {
+        int i = slot(id);
+        int old = minutes[i];
+        minutes[i] = value;
+        markDirty(i);
+        return old;
+    }
+
+    // adds bits to the warning mask and returns the previous mask
+    int orWarned(UUID id, int bits) {
+        int i = slot(id);
+        int old = warned[i];
+        warned[i] = old | bits;
+        if (old != (old | bits)) {
+            markDirty(i);
+        }
+        return old;
+    }
+
+    // puts a stored entry without flagging it as changed, used when loading from a backend
+    void load(UUID id, int value, int warnedMask) {
+        int i = slot(id);
+        minutes[i] = value;
+        warned[i] = warnedMask;
+    }
+
+    // removes a player entry and closes the gap so probe chains stay intact
+    boolean remove(UUID id) {
+        int i = find(id);
+        if (i < 0) {
+            return false;
+        }
+
+        if (dirty[i]) {
+            dirtyCount--;
+        }
+
+        int mask = keys.length - 1;
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (keys[j] == null) {
+                break;
+            }
+
+            // leave the entry where it is if its home slot lies between the gap and itself
+            int home = hash(msb[j], lsb[j]) & mask;
+            boolean stays = (i <= j) ? (i < home && home <= j) : (i < home || home <= j);
+            if (stays) {
+                continue;
+            }
+
+            keys[i] = keys[j];
+            msb[i] = msb[j];
+            lsb[i] = lsb[j];
+            minutes[i] = minutes[j];
+            warned[i] = warned[j];
+            dirty[i] = dirty[j];
+            i = j;
+        }
+
+        keys[i] = null;
+        minutes[i] = 0;
+        warned[i] = 0;
+        dirty[i] = false;
+        size--;
+        return true;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int dirtyCount() {
+        return dirtyCount;
+    }
+
+    // slot access for iteration, keyAt returns null for empty slots
+    int capacity() {
+        return keys.length;
+    }
+
+    UUID keyAt(int i) {
+        return keys[i];
+    }
+
+    int minutesAt(int i) {
+        return minutes[i];
+    }
+
+    int warnedAt(int i) {
+        return warned[i];
+    }
+
+    // moves all changed entries into a new table and clears the change flags
+    // used by background writers so they never see the live arrays
+    DayCounters takeDirty() {
+        DayCounters c = new DayCounters(day, dirtyCount * 2);
+        for (int i = 0; i < keys.length && c.size < dirtyCount; i++) {
+            if (dirty[i]) {
+                c.insert(keys[i], minutes[i], warned[i]);
+                dirty[i] = false;
+            }
+        }
+        dirtyCount = 0;
+        return c;
+    }
+
+    // index of an existing entry or -1
+    private int find(UUID id) {
+        long hi = id.getMostSignificantBits();
+        long lo = id.getLeastSignificantBits();
+        int mask = keys.length - 1;
+
+        for (int i = hash(hi, lo) & mask; keys[i] != null; i = (i + 1) & mask) {
+            if (msb[i] == hi && lsb[i] == lo) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // index of an entry inserting an empty one if needed
+    private int slot(UUID id) {
+        int i = find(id);
+        if (i >= 0) {
+            return i;
+        }
+
+        // keep the table at most half full so probe chains stay short
+        if ((size + 1) * 2 > keys.length) {
+            grow();
+        }
+        return insert(id, 0, 0);
+    }
+
+    private void markDirty(int i) {
+        if (!dirty[i]) {
+            dirty[i] = true;
+            dirtyCount++;
+        }
+    }
+
+    private int insert(UUID id, int min, int warn) {
+        long hi = id.getMostSignificantBits();
+        long lo = id.getLeastSignificantBits();
+        int mask = keys.length - 1;
+
+        int i = hash(hi, lo) & mask;
+        while (keys[i] != null) {
+            i = (i + 1) & mask;
+        }
+
+        keys[i] = id;
+        msb[i] = hi;
+        lsb[i] = lo;
+        minutes[i] = min;
+        warned[i] = warn;
+        size++;
+        return i;
+    }
+
+    private void grow() {
+        UUID[] oldKeys = keys;
+        int[] oldMinutes = minutes;
+        int[] oldWarned = warned;
+        boolean[] oldDirty = dirty;
+
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int j = insert(oldKeys[i], oldMinutes[i], oldWarned[i]);
+                if (oldDirty[i]) {
+                    markDirty(j);
+                }
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        int cap = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        keys = new UUID[cap];
+        msb = new long[cap];
+        lsb = new long[cap];
+        minutes = new int[cap];
+        warned = new int[cap];
+        dirty = new boolean[cap];
+        size = 0;
+        dirtyCount = 0;
+    }
+
+    // spreads both uuid halves over the low bits used for the slot index
+    private static int hash(long hi, long lo) {
+        long h = hi ^ lo;
+        h ^= (h >>> 33);
+        h *= 0xff51afd7ed558ccdL;
+        h ^= (h >>> 33);
+        return (int) h;
+    }
+}
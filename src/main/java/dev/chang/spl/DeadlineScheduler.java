@@ -0,0 +1,86 @@
+package dev.chang.spl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/*
+  priority queue of per player enforcement deadlines
+  each online player has at most one live deadline, the next warning threshold or the limit itself
+  rescheduling leaves the old entry in the queue and a version check skips it when it comes up
+  polling only looks at the head so the cost grows with due events instead of online players
+  players schedule from their own thread on folia so the queue is guarded by this scheduler
+  due players are handed out after the lock is released
+*/
+final class DeadlineScheduler {
+
+    private record Deadline(long at, UUID id, long version) {
+    }
+
+    // all entries ordered by due time, including replaced ones
+    private final PriorityQueue<Deadline> queue = new PriorityQueue<>((a, b) -> Long.compare(a.at, b.at));
+
+    // version of the live deadline per player
+    private final Map<UUID, Long> live = new HashMap<>();
+
+    // called with the player whose deadline is due
+    private final Consumer<UUID> fire;
+
+    private long nextVersion;
+
+    DeadlineScheduler(Consumer<UUID> fire) {
+        this.fire = fire;
+    }
+
+    // replaces the player's deadline with a new due time in monotonic millis
+    synchronized void schedule(UUID id, long at) {
+        long v = ++nextVersion;
+        live.put(id, v);
+        queue.add(new Deadline(at, id, v));
+
+        // drop replaced entries once they clearly outnumber the live ones
+        if (queue.size() > 64 + 2 * live.size()) {
+            queue.removeIf(d -> !Long.valueOf(d.version).equals(live.get(d.id)));
+        }
+    }
+
+    synchronized void cancel(UUID id) {
+        live.remove(id);
+    }
+
+    synchronized void clear() {
+        live.clear();
+        queue.clear();
+    }
+
+    // fires every deadline that is due, handlers may schedule again for the same player
+    void poll(long now) {
+        List<UUID> due = null;
+
+        synchronized (this) {
+            Deadline d;
+            while ((d = queue.peek()) != null && d.at <= now) {
+                queue.poll();
+
+                Long v = live.get(d.id);
+                if (v != null && v == d.version) {
+                    live.remove(d.id);
+                    if (due == null) {
+                        due = new ArrayList<>();
+                    }
+                    due.add(d.id);
+                }
+            }
+        }
+
+        if (due != null) {
+            for (UUID id : due) {
+                fire.accept(id);
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package dev.chang.spl;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+
+/*
+  task scheduler for folia where regions tick on separate threads
+  global work goes to the global region scheduler and player work to the player's entity scheduler
+  the bukkit scheduler is not available there so nothing in the plugin may call it directly
+*/
+final class FoliaTaskScheduler implements TaskScheduler {
+
+    private final Plugin plugin;
+
+    FoliaTaskScheduler(Plugin plugin) {
+        this.plugin = plugin;
+    }
+
+    @Override
+    public boolean isFolia() {
+        return true;
+    }
+
+    @Override
+    public void runGlobal(Runnable r) {
+        Bukkit.getGlobalRegionScheduler().execute(plugin, r);
+    }
+
+    @Override
+    public Task runGlobalLater(Runnable r, long delayTicks) {
+        // folia rejects delays below one tick
+        return Bukkit.getGlobalRegionScheduler().runDelayed(plugin, t -> r.run(), Math.max(1L, delayTicks))::cancel;
+    }
+
+    @Override
+    public Task runGlobalTimer(Runnable r, long delayTicks, long periodTicks) {
+        return Bukkit.getGlobalRegionScheduler().runAtFixedRate(plugin, t -> r.run(),
+            Math.max(1L, delayTicks), Math.max(1L, periodTicks))::cancel;
+    }
+
+    @Override
+    public void runAsync(Runnable r) {
+        Bukkit.getAsyncScheduler().runNow(plugin, t -> r.run());
+    }
+
+    @Override
+    public void runForPlayer(Player p, Runnable r) {
+        if (Bukkit.isOwnedByCurrentRegion(p)) {
+            r.run();
+        } else {
+            // the retired callback is null because the work is pointless once the player is gone
+            p.getScheduler().run(plugin, t -> r.run(), null);
+        }
+    }
+}
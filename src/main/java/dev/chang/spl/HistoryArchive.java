@@ -0,0 +1,157 @@
+package dev.chang.spl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+/*
+  compressed monthly archive for days that left the retention window
+  each month is one gzip file made of concatenated members with compact binary day blocks
+  a day block is the epoch day the entry count and 24 bytes per player (uuid halves minutes warned mask)
+  if a day was archived twice the later block wins so a crash while archiving never loses data
+  an append writes a copy of the month with the new member and renames it over the old file, so a month file is never torn
+  a torn tail left by an older version ends the read after the last complete block
+  reads stream through a single month and never load anything into the live store
+*/
+final class HistoryArchive {
+
+    // bytes per player entry inside a day block
+    private static final int ENTRY_BYTES = 24;
+
+    // folder holding one players-yyyy-mm.gz file per month
+    private final File dir;
+
+    HistoryArchive(File dir) {
+        this.dir = dir;
+    }
+
+    // appends day blocks to their month files and forces them to disk
+    // the month is copied so a crash leaves either the old or the new file in place
+    synchronized void append(List<DayCounters> days) throws IOException {
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("could not create " + dir.getName());
+        }
+
+        Map<YearMonth, List<DayCounters>> byMonth = new LinkedHashMap<>();
+        for (DayCounters c : days) {
+            byMonth.computeIfAbsent(YearMonth.from(c.day), m -> new ArrayList<>()).add(c);
+        }
+
+        for (Map.Entry<YearMonth, List<DayCounters>> e : byMonth.entrySet()) {
+            File target = segment(e.getKey());
+            File temp = new File(dir, target.getName() + ".tmp");
+            if (target.exists()) {
+                Files.copy(target.toPath(), temp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                Files.deleteIfExists(temp.toPath());
+            }
+
+            try (FileOutputStream fos = new FileOutputStream(temp, true)) {
+                // every append is its own gzip member, readers see them as one stream
+                GZIPOutputStream gz = new GZIPOutputStream(fos);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(gz));
+
+                for (DayCounters c : e.getValue()) {
+                    writeBlock(out, c);
+                }
+
+                out.flush();
+                gz.finish();
+                fos.getFD().sync();
+            }
+
+            try {
+                Files.move(temp.toPath(), target.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    // counters of one archived day or null if the day is not archived
+    synchronized DayCounters readDay(LocalDate day) throws IOException {
+        File f = segment(YearMonth.from(day));
+        if (!f.exists()) {
+            return null;
+        }
+
+        int wanted = (int) day.toEpochDay();
+        DayCounters found = null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+            new GZIPInputStream(new BufferedInputStream(new FileInputStream(f)))))) {
+            while (true) {
+                int epochDay;
+                try {
+                    epochDay = in.readInt();
+                } catch (EOFException end) {
+                    break;
+                }
+
+                // a block cut off by a crash is dropped and the last complete one stays
+                try {
+                    int count = in.readInt();
+                    if (epochDay != wanted) {
+                        in.skipNBytes((long) count * ENTRY_BYTES);
+                        continue;
+                    }
+
+                    // a later block for the same day replaces an earlier one
+                    DayCounters block = new DayCounters(day);
+                    for (int i = 0; i < count; i++) {
+                        UUID id = new UUID(in.readLong(), in.readLong());
+                        block.load(id, in.readInt(), in.readInt());
+                    }
+                    found = block;
+                } catch (EOFException | ZipException torn) {
+                    break;
+                }
+            }
+        } catch (EOFException | ZipException torn) {
+            // a broken member header or trailer at the end, blocks before it were already read
+        }
+
+        return found;
+    }
+
+    private File segment(YearMonth month) {
+        return new File(dir, "players-" + month + ".gz");
+    }
+
+    private static void writeBlock(DataOutputStream out, DayCounters c) throws IOException {
+        out.writeInt((int) c.day.toEpochDay());
+        out.writeInt(c.size());
+
+        for (int i = 0; i < c.capacity(); i++) {
+            UUID id = c.keyAt(i);
+            if (id == null) {
+                continue;
+            }
+
+            out.writeLong(id.getMostSignificantBits());
+            out.writeLong(id.getLeastSignificantBits());
+            out.writeInt(c.minutesAt(i));
+            out.writeInt(c.warnedAt(i));
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package dev.chang.spl;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/*
+  players last seen with the bypass permission
+  permissions are not available before a player has joined so pre login checks use this set instead
+  kept in bypass.yml so it survives restarts and is written on the background writer when it changes
+*/
+final class KnownBypass {
+
+    // bypass.yml on disk
+    private final File file;
+
+    // readable from the async login threads
+    private final Set<UUID> ids = ConcurrentHashMap.newKeySet();
+
+    // writes the set after changes
+    private final WriteBehindSaver saver;
+
+    // changes inside this window are merged into a single write
+    private static final long SAVE_COALESCE_MS = 5_000L;
+
+    KnownBypass(Logger logger, File folder) {
+        this.file = new File(folder, "bypass.yml");
+
+        YamlConfiguration yaml = YamlConfiguration.loadConfiguration(file);
+        for (String s : yaml.getStringList("players")) {
+            try {
+                ids.add(UUID.fromString(s));
+            } catch (IllegalArgumentException ignored) {
+            }
+        }
+
+        this.saver = new WriteBehindSaver(logger, file.getName(),
+            () -> WriteBehindSaver.writeAtomically(file, serialize()), SAVE_COALESCE_MS);
+    }
+
+    boolean contains(UUID id) {
+        return ids.contains(id);
+    }
+
+    // records the permission seen on an online player and queues a write if it changed
+    void update(UUID id, boolean bypass) {
+        boolean changed = bypass ? ids.add(id) : ids.remove(id);
+        if (changed) {
+            saver.requestSave();
+        }
+    }
+
+    void close() {
+        saver.close();
+    }
+
+    private String serialize() {
+        List<String> list = new ArrayList<>();
+        for (UUID id : ids) {
+            list.add(id.toString());
+        }
+
+        YamlConfiguration yaml = new YamlConfiguration();
+        yaml.set("players", list);
+        return yaml.saveToString();
+    }
+}
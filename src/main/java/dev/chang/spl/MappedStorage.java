@@ -0,0 +1,391 @@
+package dev.chang.spl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/*
+  memory mapped backend for large servers
+  the current day lives in today.dat as fixed 8 byte records (minutes warned mask) at a per player slot
+  slots are assigned on first sight and kept in slots.idx as 16 byte uuid entries in slot order
+  every change is a single in place write to the mapped buffer and durability comes from periodic force calls
+  finished days are moved into the same compressed monthly archive the yaml backend uses
+  at a day change the finished day is copied and its records cleared, the writer thread archives the copy right after
+  so the server thread never waits for gzip or fsync, only a crash within that save window loses the finished day
+  the last finished day stays in memory until the next day change, late session minutes for it are archived again
+*/
+final class MappedStorage implements StorageBackend {
+
+    // header is magic and epoch day followed by padding so records stay 8 byte aligned
+    private static final int MAGIC = 0x53504C31;
+    private static final int HEADER_BYTES = 16;
+    private static final int RECORD_BYTES = 8;
+    private static final int SLOT_BYTES = 16;
+
+    // slot capacity steps for the mapped region
+    private static final int GROW_SLOTS = 4096;
+
+    // epoch day value for a file that has never held a day
+    private static final int NO_DAY = Integer.MIN_VALUE;
+
+    // force requests inside this window are merged
+    private static final long SAVE_COALESCE_MS = 2_000L;
+
+    // main plugin reference for logging
+    private final SimplePlaytimeLimiter plugin;
+
+    // mapped day file and slot index on disk
+    private final File dataFile;
+    private final File slotFile;
+
+    // archive for finished days
+    private final HistoryArchive archive;
+
+    // pulls pending changes from the store
+    private final Supplier<Changes> changes;
+
+    // everything below is guarded by this backend
+    private FileChannel dataChannel;
+    private FileChannel slotChannel;
+    private MappedByteBuffer buf;
+    private int capacity;
+    private int headerDay = NO_DAY;
+
+    // uuid to slot index and slot index to uuid
+    private final Map<UUID, Integer> slots = new HashMap<>();
+    private final List<UUID> slotIds = new ArrayList<>();
+
+    // reused buffer for appending one slot entry
+    private final ByteBuffer slotEntry = ByteBuffer.allocate(SLOT_BYTES);
+
+    // the last finished day, late changes still go here until the next day change
+    private DayCounters recent;
+
+    // true while recent has changes the archive does not have yet
+    private boolean recentUnarchived;
+
+    // older finished days the writer has not archived yet, only filled if two days change before a save
+    private final List<DayCounters> unarchived = new ArrayList<>();
+
+    // background thread that forces the mapped pages to disk
+    private WriteBehindSaver saver;
+
+    MappedStorage(SimplePlaytimeLimiter plugin, File folder, Supplier<Changes> changes) {
+        this.plugin = plugin;
+        this.dataFile = new File(folder, "today.dat");
+        this.slotFile = new File(folder, "slots.idx");
+        this.archive = new HistoryArchive(new File(folder, "archive"));
+        this.changes = changes;
+    }
+
+    @Override
+    public synchronized long open() throws IOException {
+        this.dataChannel = FileChannel.open(dataFile.toPath(),
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.slotChannel = FileChannel.open(slotFile.toPath(),
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        readSlots();
+
+        int needed = slotIds.size() + 1;
+        map(((needed + GROW_SLOTS - 1) / GROW_SLOTS) * GROW_SLOTS);
+
+        if (buf.getInt(0) == MAGIC) {
+            headerDay = buf.getInt(4);
+        } else {
+            buf.putInt(0, MAGIC);
+            buf.putInt(4, NO_DAY);
+        }
+
+        this.saver = new WriteBehindSaver(plugin.getLogger(), dataFile.getName(), this::flush, SAVE_COALESCE_MS,
+            plugin.getMetrics().save);
+
+        // every change is already in the mapped file so there is no sequence to resume from
+        return 0L;
+    }
+
+    // loads the slot index and drops a torn tail entry
+    private void readSlots() throws IOException {
+        long size = slotChannel.size();
+        long complete = size - (size % SLOT_BYTES);
+        ByteBuffer all = ByteBuffer.allocate((int) complete);
+
+        while (all.hasRemaining()) {
+            if (slotChannel.read(all, all.position()) < 0) {
+                break;
+            }
+        }
+        all.flip();
+
+        while (all.remaining() >= SLOT_BYTES) {
+            UUID id = new UUID(all.getLong(), all.getLong());
+            slots.put(id, slotIds.size());
+            slotIds.add(id);
+        }
+
+        if (complete != size) {
+            slotChannel.truncate(complete);
+        }
+    }
+
+    @Override
+    public DayCounters loadDay(LocalDate day) throws IOException {
+        int epochDay = (int) day.toEpochDay();
+
+        synchronized (this) {
+            if (headerDay == NO_DAY || epochDay > headerDay) {
+                ensureDay(epochDay);
+            }
+            if (epochDay == headerDay) {
+                return copyDay();
+            }
+
+            // copied because late changes still update the finished day
+            if (recent != null && recent.day.equals(day)) {
+                return copyOf(recent);
+            }
+        }
+
+        DayCounters archived = archive.readDay(day);
+        return archived != null ? archived : new DayCounters(day);
+    }
+
+    @Override
+    public DayCounters loadPlayer(UUID id, LocalDate day) throws IOException {
+        int epochDay = (int) day.toEpochDay();
+        DayCounters c = new DayCounters(day, 2);
+
+        synchronized (this) {
+            // a login on a new day rolls the mapped file before anything is read
+            if (headerDay == NO_DAY || epochDay > headerDay) {
+                ensureDay(epochDay);
+            }
+
+            if (epochDay == headerDay) {
+                Integer slot = slots.get(id);
+                if (slot != null) {
+                    int off = offset(slot);
+                    c.load(id, buf.getInt(off), buf.getInt(off + 4));
+                }
+                return c;
+            }
+            if (recent != null && recent.day.equals(day)) {
+                c.load(id, recent.minutes(id), recent.warned(id));
+                return c;
+            }
+        }
+
+        DayCounters archived = archive.readDay(day);
+        if (archived != null && archived.contains(id)) {
+            c.load(id, archived.minutes(id), archived.warned(id));
+        }
+        return c;
+    }
+
+    // the in place write for every change, called under the store lock
+    @Override
+    public synchronized void recorded(long seq, UUID id, LocalDate day, int delta, int warnedMask) {
+        int epochDay = (int) day.toEpochDay();
+
+        // a late change for the day that was just rolled goes to its copy and is archived again
+        if (headerDay != NO_DAY && epochDay < headerDay) {
+            if (recent != null && recent.day.equals(day)) {
+                recent.load(id, Math.max(0, recent.minutes(id) + delta), recent.warned(id) | warnedMask);
+                recentUnarchived = true;
+                return;
+            }
+            plugin.getLogger().warning("dropping change for " + day + " which is already archived");
+            return;
+        }
+
+        ensureDay(epochDay);
+
+        int off = offset(slotFor(id));
+        buf.putInt(off, buf.getInt(off) + delta);
+        buf.putInt(off + 4, buf.getInt(off + 4) | warnedMask);
+    }
+
+    @Override
+    public void requestSave() {
+        saver.requestSave();
+    }
+
+    @Override
+    public void importDay(DayCounters day) throws IOException {
+        synchronized (this) {
+            if (day.day.toEpochDay() == headerDay) {
+                for (int i = 0; i < day.capacity(); i++) {
+                    UUID id = day.keyAt(i);
+                    if (id == null) {
+                        continue;
+                    }
+
+                    int off = offset(slotFor(id));
+                    buf.putInt(off, Math.max(buf.getInt(off), day.minutesAt(i)));
+                    buf.putInt(off + 4, buf.getInt(off + 4) | day.warnedAt(i));
+                }
+                return;
+            }
+        }
+
+        // past days go straight to the archive where the newest block for a day wins
+        archive.append(List.of(day));
+    }
+
+    @Override
+    public void close() {
+        saver.close();
+
+        synchronized (this) {
+            try {
+                dataChannel.close();
+                slotChannel.close();
+            } catch (IOException e) {
+                plugin.getLogger().warning("could not close " + dataFile.getName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // archives finished days and forces the mapped pages and slot index to disk
+    // runs on the writer thread
+    private void flush() throws IOException {
+        // the mapped file already holds every change, this only clears the store change flags
+        // the changed records are what the force below writes out
+        long records = 0;
+        for (DayCounters c : changes.get().days()) {
+            records += c.size();
+        }
+        plugin.getMetrics().saveBytes.record(records * RECORD_BYTES);
+
+        // the archive keeps the newest block of a day, so the whole finished day is appended again
+        List<DayCounters> finished = new ArrayList<>();
+        List<DayCounters> older;
+        synchronized (this) {
+            older = new ArrayList<>(unarchived);
+            unarchived.clear();
+            finished.addAll(older);
+            if (recent != null && recentUnarchived) {
+                finished.add(copyOf(recent));
+                recentUnarchived = false;
+            }
+        }
+
+        if (!finished.isEmpty()) {
+            try {
+                archive.append(finished);
+            } catch (IOException e) {
+                synchronized (this) {
+                    unarchived.addAll(0, older);
+                    recentUnarchived = recentUnarchived || finished.size() > older.size();
+                }
+                throw e;
+            }
+        }
+
+        synchronized (this) {
+            slotChannel.force(false);
+            buf.force();
+        }
+    }
+
+    // moves the mapped file to a new day, the finished one is archived by the writer thread
+    // may run on the server thread under the store lock, so this only copies and clears memory
+    private void ensureDay(int epochDay) {
+        if (epochDay == headerDay) {
+            return;
+        }
+
+        if (headerDay != NO_DAY) {
+            if (recent != null && recentUnarchived) {
+                unarchived.add(recent);
+            }
+            recent = copyDay();
+            recentUnarchived = true;
+
+            saver.requestSave();
+        }
+
+        for (int off = HEADER_BYTES; off < HEADER_BYTES + capacity * RECORD_BYTES; off += RECORD_BYTES) {
+            buf.putLong(off, 0L);
+        }
+        buf.putInt(4, epochDay);
+        headerDay = epochDay;
+    }
+
+    // counters of the day currently in the mapped file
+    private DayCounters copyDay() {
+        DayCounters c = new DayCounters(LocalDate.ofEpochDay(headerDay));
+
+        for (int slot = 0; slot < slotIds.size(); slot++) {
+            int off = offset(slot);
+            int minutes = buf.getInt(off);
+            int warned = buf.getInt(off + 4);
+
+            if (minutes != 0 || warned != 0) {
+                c.load(slotIds.get(slot), minutes, warned);
+            }
+        }
+        return c;
+    }
+
+    private static DayCounters copyOf(DayCounters c) {
+        DayCounters copy = new DayCounters(c.day, c.size() * 2);
+        for (int i = 0; i < c.capacity(); i++) {
+            if (c.keyAt(i) != null) {
+                copy.load(c.keyAt(i), c.minutesAt(i), c.warnedAt(i));
+            }
+        }
+        return copy;
+    }
+
+    // slot of a player, assigning and persisting a new one on first sight
+    private int slotFor(UUID id) {
+        Integer slot = slots.get(id);
+        if (slot != null) {
+            return slot;
+        }
+
+        int s = slotIds.size();
+        try {
+            slotEntry.clear();
+            slotEntry.putLong(id.getMostSignificantBits()).putLong(id.getLeastSignificantBits()).flip();
+            while (slotEntry.hasRemaining()) {
+                slotChannel.write(slotEntry, (long) s * SLOT_BYTES + slotEntry.position());
+            }
+
+            if (s >= capacity) {
+                map(capacity + GROW_SLOTS);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("could not grow " + dataFile.getName() + ": " + e.getMessage(), e);
+        }
+
+        slots.put(id, s);
+        slotIds.add(id);
+        return s;
+    }
+
+    // maps the header and the given number of slots, growing the file if needed
+    private void map(int slotCapacity) throws IOException {
+        if (buf != null) {
+            buf.force();
+        }
+
+        this.capacity = slotCapacity;
+        this.buf = dataChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) slotCapacity * RECORD_BYTES);
+    }
+
+    private static int offset(int slot) {
+        return HEADER_BYTES + slot * RECORD_BYTES;
+    }
+}
@@ -0,0 +1,201 @@
+package dev.chang.spl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/*
+  timers and value distributions for the hot paths of the plugin
+  every histogram keeps log linear buckets like hdrhistogram, 16 per power of two so a percentile is within about 6 percent
+  recording is a few atomic adds without locks or allocation so it is safe on the server thread and on region threads
+  values are kept since startup, /pt stats shows them and a background thread writes them as prometheus text
+*/
+final class Metrics {
+
+    // one distribution of non negative values
+    static final class Histogram {
+
+        // values below this go to a bucket of their own
+        private static final int LINEAR = 32;
+        private static final int SUB_BITS = 4;
+        private static final int SUB = 1 << SUB_BITS;
+        private static final int BUCKETS = LINEAR + (63 - 5) * SUB;
+
+        final String name;
+        final String help;
+        final String label;
+
+        // nanosecond values are shown in milliseconds and exported in seconds
+        final boolean nanos;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        Histogram(String name, String help, String label, boolean nanos) {
+            this.name = name;
+            this.help = help;
+            this.label = label;
+            this.nanos = nanos;
+        }
+
+        void record(long value) {
+            long v = Math.max(0L, value);
+            counts.incrementAndGet(index(v));
+            count.increment();
+            sum.add(v);
+            if (v > max.get()) {
+                max.accumulateAndGet(v, Math::max);
+            }
+        }
+
+        // records the time since a System.nanoTime start
+        void since(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        long count() {
+            return count.sum();
+        }
+
+        long sum() {
+            return sum.sum();
+        }
+
+        long max() {
+            return max.get();
+        }
+
+        // smallest bucket value with at least the given share of recorded values at or below it
+        long percentile(double q) {
+            long[] snapshot = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                snapshot[i] = counts.get(i);
+                total += snapshot[i];
+            }
+            if (total == 0) {
+                return 0L;
+            }
+
+            long target = Math.max(1L, (long) Math.ceil(q * total));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += snapshot[i];
+                if (seen >= target) {
+                    return Math.min(upperBound(i), max.get());
+                }
+            }
+            return max.get();
+        }
+
+        private static int index(long v) {
+            if (v < LINEAR) {
+                return (int) v;
+            }
+            int exp = 63 - Long.numberOfLeadingZeros(v);
+            int sub = (int) (v >>> (exp - SUB_BITS)) & (SUB - 1);
+            return LINEAR + (exp - 5) * SUB + sub;
+        }
+
+        private static long upperBound(int i) {
+            if (i < LINEAR) {
+                return i;
+            }
+            int exp = (i - LINEAR) / SUB + 5;
+            int sub = (i - LINEAR) % SUB;
+            return ((long) (SUB + sub + 1) << (exp - SUB_BITS)) - 1;
+        }
+    }
+
+    final Histogram flushSessions = new Histogram("spl_flush_sessions_seconds",
+        "time to move session minutes into storage", "Sessions übernehmen", true);
+    final Histogram save = new Histogram("spl_save_seconds",
+        "time the storage backend needs for one write", "Speichern", true);
+    final Histogram saveBytes = new Histogram("spl_save_bytes",
+        "bytes written by one storage write", "Bytes pro Speichern", false);
+    final Histogram uiTick = new Histogram("spl_ui_tick_seconds",
+        "time of one bossbar ticker run", "UI-Tick", true);
+    final Histogram uiPlayers = new Histogram("spl_ui_players_per_tick",
+        "players updated by one bossbar ticker run", "Spieler pro UI-Tick", false);
+    final Histogram enforce = new Histogram("spl_enforce_seconds",
+        "time of one limit check", "Limitprüfung", true);
+    final Histogram rollover = new Histogram("spl_rollover_seconds",
+        "work time of one day switch including every batch of split sessions", "Tageswechsel", true);
+
+    final List<Histogram> all = List.of(flushSessions, save, saveBytes, uiTick, uiPlayers, enforce, rollover);
+
+    private ScheduledExecutorService exporter;
+
+    // writes the prometheus file every interval until close, zero or less turns the export off
+    synchronized void startExport(Logger logger, File file, int intervalSeconds) {
+        stopExport();
+        if (intervalSeconds <= 0) {
+            return;
+        }
+
+        exporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "SimplePlaytimeLimiter-metrics");
+            t.setDaemon(true);
+            return t;
+        });
+        exporter.scheduleWithFixedDelay(() -> {
+            try {
+                WriteBehindSaver.writeAtomically(file, prometheus());
+            } catch (IOException e) {
+                logger.warning("could not write " + file.getName() + ": " + e.getMessage());
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    synchronized void stopExport() {
+        if (exporter != null) {
+            exporter.shutdownNow();
+            exporter = null;
+        }
+    }
+
+    // one chat line per histogram for /pt stats
+    String describe(Histogram h) {
+        if (h.count() == 0) {
+            return "§e" + h.label + "§7: noch keine Werte";
+        }
+        return "§e" + h.label + "§7: p50 §e" + format(h, h.percentile(0.5))
+            + "§7, p99 §e" + format(h, h.percentile(0.99))
+            + "§7, max §e" + format(h, h.max())
+            + "§7, n §e" + h.count();
+    }
+
+    // all histograms as prometheus summaries
+    String prometheus() {
+        StringBuilder sb = new StringBuilder(2048);
+        for (Histogram h : all) {
+            sb.append("# HELP ").append(h.name).append(' ').append(h.help).append('\n');
+            sb.append("# TYPE ").append(h.name).append(" summary\n");
+            for (double q : new double[]{0.5, 0.9, 0.99}) {
+                sb.append(h.name).append("{quantile=\"").append(q).append("\"} ")
+                    .append(export(h, h.percentile(q))).append('\n');
+            }
+            sb.append(h.name).append("_sum ").append(export(h, h.sum())).append('\n');
+            sb.append(h.name).append("_count ").append(h.count()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static String format(Histogram h, long v) {
+        return h.nanos ? String.format(Locale.ROOT, "%.3f ms", v / 1e6) : String.valueOf(v);
+    }
+
+    private static String export(Histogram h, long v) {
+        return h.nanos ? String.format(Locale.ROOT, "%.9f", v / 1e9) : String.valueOf(v);
+    }
+}
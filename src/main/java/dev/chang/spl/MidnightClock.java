@@ -0,0 +1,78 @@
+package dev.chang.spl;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/*
+  fires once when the date changes in the configured timezone
+  runs on its own thread against the wall clock so a lagging server does not delay the reset
+  the executor measures delays on a monotonic clock, so waits are capped and the date is checked again on every wake
+  that way a system clock jump or a timezone change on reload is picked up within a minute
+  only forward date changes fire, a clock that jumps back never reopens a finished day
+  dates come from the plugin's time source so a virtual clock drives the same path
+*/
+final class MidnightClock {
+
+    // wall clock and the longest sleep between two checks of it
+    private final TimeSource time;
+
+    // configured timezone, read on every wake so reloads apply
+    private final Supplier<ZoneId> zone;
+
+    // called on the clock thread when a new day starts, hands off to the server itself
+    private final Runnable onNewDay;
+
+    private final ScheduledExecutorService executor;
+
+    // day the last check saw, only touched by the clock thread
+    private LocalDate day;
+
+    MidnightClock(TimeSource time, Supplier<ZoneId> zone, Runnable onNewDay) {
+        this.time = time;
+        this.zone = zone;
+        this.onNewDay = onNewDay;
+
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "SimplePlaytimeLimiter-clock");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    void start() {
+        executor.execute(() -> {
+            day = time.today(zone.get());
+            arm();
+        });
+    }
+
+    void close() {
+        executor.shutdownNow();
+    }
+
+    // sleeps until the next boundary or the check interval, whichever is shorter
+    private void arm() {
+        Instant now = time.instant();
+        long wait = Duration.between(now, TimeUtil.nextMidnight(zone.get(), now)).toMillis();
+
+        executor.schedule(this::check, Math.max(1L, Math.min(wait, time.maxWaitMillis())), TimeUnit.MILLISECONDS);
+    }
+
+    private void check() {
+        try {
+            LocalDate today = time.today(zone.get());
+            if (today.isAfter(day)) {
+                day = today;
+                onNewDay.run();
+            }
+        } finally {
+            arm();
+        }
+    }
+}
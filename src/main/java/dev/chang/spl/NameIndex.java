@@ -0,0 +1,116 @@
+package dev.chang.spl;
+
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/*
+  name and uuid lookups for every player the server has seen
+  built once from the offline player list and kept current from joins so nothing scans bukkit's player storage again
+  exact lookups ignore case and hit a hash map, prefix lookups walk a sorted map and uuid to name is a plain map read
+  reads are lock free so commands and tab completion may use it from any thread, writes are guarded by this index
+*/
+final class NameIndex implements Listener {
+
+    // lowercase name to the player who last used it
+    private final Map<String, UUID> byName = new ConcurrentHashMap<>();
+
+    // last known name per player
+    private final Map<UUID, String> byId = new ConcurrentHashMap<>();
+
+    // lowercase name to the name as the player writes it, ordered for prefix lookups
+    private final NavigableMap<String, String> sorted = new ConcurrentSkipListMap<>();
+
+    // reads every player bukkit knows once, names seen on join meanwhile are newer and win
+    void build() {
+        OfflinePlayer[] all = Bukkit.getOfflinePlayers();
+        if (all == null) {
+            return;
+        }
+
+        for (OfflinePlayer op : all) {
+            String name = op.getName();
+            if (name != null && !name.isBlank() && op.getUniqueId() != null) {
+                putIfAbsent(op.getUniqueId(), name);
+            }
+        }
+    }
+
+    // records a player's current name and drops a previous one
+    synchronized void put(UUID id, String name) {
+        String old = byId.put(id, name);
+        if (old != null && !old.equalsIgnoreCase(name)) {
+            String oldKey = key(old);
+            if (byName.remove(oldKey, id)) {
+                sorted.remove(oldKey);
+            }
+        }
+
+        String k = key(name);
+        byName.put(k, id);
+        sorted.put(k, name);
+    }
+
+    // uuid of the player with this name ignoring case, null if the name was never seen
+    UUID find(String name) {
+        return name == null ? null : byName.get(key(name));
+    }
+
+    // last known name of a player, null if the player was never seen
+    String name(UUID id) {
+        return byId.get(id);
+    }
+
+    // names starting with the prefix ignoring case in alphabetical order, at most limit entries
+    List<String> complete(String prefix, int limit) {
+        String p = prefix == null ? "" : key(prefix);
+        NavigableMap<String, String> range = p.isEmpty()
+            ? sorted
+            : sorted.subMap(p, true, p + Character.MAX_VALUE, false);
+
+        if (range.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<String> out = new ArrayList<>(Math.min(limit, 16));
+        for (String name : range.values()) {
+            if (out.size() >= limit) {
+                break;
+            }
+            out.add(name);
+        }
+        return out;
+    }
+
+    int size() {
+        return byId.size();
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onJoin(PlayerJoinEvent e) {
+        put(e.getPlayer().getUniqueId(), e.getPlayer().getName());
+    }
+
+    private synchronized void putIfAbsent(UUID id, String name) {
+        if (!byId.containsKey(id) && !byName.containsKey(key(name))) {
+            put(id, name);
+        }
+    }
+
+    private static String key(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
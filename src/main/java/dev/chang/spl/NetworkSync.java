@@ -0,0 +1,176 @@
+package dev.chang.spl;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/*
+  shares playtime between the servers of a proxy network
+  local minute changes are collected per player and day and published in batches on a background thread
+  the same thread pulls the deltas of other nodes into a cached view of their minutes for today
+  enforcement only reads that cache, the transport is only waited on at pre login where the thread may block
+*/
+final class NetworkSync {
+
+    private final Logger logger;
+
+    // unique name of this server in the network
+    private final String node;
+
+    private final SyncTransport transport;
+
+    // clock and configured timezone for the current day
+    private final TimeSource time;
+    private final Supplier<ZoneId> zone;
+
+    // told about players whose remote minutes changed so their deadlines move
+    private final Consumer<UUID> remoteChanged;
+
+    // unpublished local minutes keyed by day and player
+    private final Map<Long, Map<UUID, Integer>> outbox = new ConcurrentHashMap<>();
+
+    // minutes other nodes counted today
+    private final Map<UUID, Integer> remote = new ConcurrentHashMap<>();
+
+    // day the remote view belongs to and the transport cursor, guarded by this sync
+    private long remoteDay;
+    private long cursor;
+
+    // minutes other nodes counted for days this node has not reached yet, their clock may run a bit ahead
+    // moved into the remote view once the day changes here, guarded by this sync
+    private final Map<Long, Map<UUID, Integer>> ahead = new HashMap<>();
+
+    private final ScheduledExecutorService executor;
+
+    NetworkSync(Logger logger, String node, SyncTransport transport, TimeSource time, Supplier<ZoneId> zone,
+                Consumer<UUID> remoteChanged) {
+        this.logger = logger;
+        this.node = node;
+        this.transport = transport;
+        this.time = time;
+        this.zone = zone;
+        this.remoteChanged = remoteChanged;
+        this.remoteDay = time.today(zone.get()).toEpochDay();
+
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "SimplePlaytimeLimiter-sync");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // catches up with everything other nodes published and starts the periodic sync
+    void start(long intervalMillis) {
+        try {
+            transport.prune(remoteDay - 1);
+        } catch (IOException e) {
+            logger.warning("could not prune network deltas: " + e.getMessage());
+        }
+        sync();
+
+        executor.scheduleWithFixedDelay(this::sync, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // queues a local change for the next publish, called under the store lock so it only touches maps
+    void add(UUID id, LocalDate day, int minutes) {
+        if (minutes != 0) {
+            outbox.computeIfAbsent(day.toEpochDay(), d -> new ConcurrentHashMap<>()).merge(id, minutes, Integer::sum);
+        }
+    }
+
+    // minutes other servers counted for a player today, never blocks
+    int remoteMinutes(UUID id) {
+        return remote.getOrDefault(id, 0);
+    }
+
+    // publishes pending changes and reads new deltas of other nodes
+    // runs on the sync thread and on login threads that need a fresh view
+    synchronized void sync() {
+        try {
+            long today = time.today(zone.get()).toEpochDay();
+            if (today != remoteDay) {
+                remote.clear();
+                Map<UUID, Integer> early = ahead.remove(today);
+                if (early != null) {
+                    remote.putAll(early);
+                }
+                ahead.keySet().removeIf(day -> day < today);
+                remoteDay = today;
+            }
+
+            List<SyncTransport.Delta> out = drain();
+            if (!out.isEmpty()) {
+                try {
+                    transport.publish(node, out);
+                } catch (IOException e) {
+                    requeue(out);
+                    throw e;
+                }
+            }
+
+            // a busy player has many deltas in one batch but their deadline only needs to move once
+            SyncTransport.Batch in = transport.poll(node, cursor);
+            Set<UUID> changed = new HashSet<>();
+            for (SyncTransport.Delta d : in.deltas()) {
+                if (d.epochDay() == remoteDay) {
+                    remote.merge(d.id(), d.minutes(), Integer::sum);
+                    changed.add(d.id());
+                } else if (d.epochDay() > remoteDay) {
+                    ahead.computeIfAbsent(d.epochDay(), day -> new HashMap<>()).merge(d.id(), d.minutes(), Integer::sum);
+                }
+            }
+            cursor = in.cursor();
+
+            for (UUID id : changed) {
+                remoteChanged.accept(id);
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.warning("network sync failed: " + e.getMessage());
+        }
+    }
+
+    // publishes what is left and stops the sync thread
+    void close() {
+        executor.shutdownNow();
+        sync();
+        transport.close();
+    }
+
+    private List<SyncTransport.Delta> drain() {
+        List<SyncTransport.Delta> out = new ArrayList<>();
+
+        for (Map.Entry<Long, Map<UUID, Integer>> day : outbox.entrySet()) {
+            Map<UUID, Integer> players = day.getValue();
+            for (UUID id : players.keySet()) {
+                Integer minutes = players.remove(id);
+                if (minutes != null && minutes != 0) {
+                    out.add(new SyncTransport.Delta(id, day.getKey(), minutes));
+                }
+            }
+        }
+
+        // days that can no longer receive changes are dropped once empty
+        outbox.entrySet().removeIf(e -> e.getKey() < remoteDay - 1 && e.getValue().isEmpty());
+        return out;
+    }
+
+    private void requeue(List<SyncTransport.Delta> deltas) {
+        for (SyncTransport.Delta d : deltas) {
+            outbox.computeIfAbsent(d.epochDay(), k -> new ConcurrentHashMap<>()).merge(d.id(), d.minutes(), Integer::sum);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package dev.chang.spl;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+
+/*
+  task scheduler for paper and spigot where everything ticks on the main thread
+*/
+final class PaperTaskScheduler implements TaskScheduler {
+
+    private final Plugin plugin;
+
+    PaperTaskScheduler(Plugin plugin) {
+        this.plugin = plugin;
+    }
+
+    @Override
+    public boolean isFolia() {
+        return false;
+    }
+
+    @Override
+    public void runGlobal(Runnable r) {
+        if (Bukkit.isPrimaryThread()) {
+            r.run();
+        } else {
+            Bukkit.getScheduler().runTask(plugin, r);
+        }
+    }
+
+    @Override
+    public Task runGlobalLater(Runnable r, long delayTicks) {
+        return Bukkit.getScheduler().runTaskLater(plugin, r, delayTicks)::cancel;
+    }
+
+    @Override
+    public Task runGlobalTimer(Runnable r, long delayTicks, long periodTicks) {
+        return Bukkit.getScheduler().runTaskTimer(plugin, r, delayTicks, periodTicks)::cancel;
+    }
+
+    @Override
+    public void runAsync(Runnable r) {
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, r);
+    }
+
+    @Override
+    public void runForPlayer(Player p, Runnable r) {
+        if (Bukkit.isPrimaryThread()) {
+            r.run();
+        } else {
+            Bukkit.getScheduler().runTask(plugin, () -> {
+                if (p.isOnline()) {
+                    r.run();
+                }
+            });
+        }
+    }
+}
@@ -1,105 +1,560 @@
 package dev.chang.spl;
 
+import org.bukkit.Bukkit;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
 
 import java.io.File;
 import java.io.IOException;
 import java.time.LocalDate;
-import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
 
 /*
-  stores per player usage data in players.yml
-  keys are grouped by date so daily resets are simple
+  stores per player usage data per day
   also stores which warning thresholds were already shown for the day
+  the live day is held in a primitive counter table and persisted through a storage backend
+  players are loaded on demand at pre login and dropped again a while after they quit
+  players.yml is the default backend, storage.backend switches to an embedded database or a memory mapped file
+  backends write on a background thread so the main thread never blocks on disk
 */
 public class PlayerDataStore implements Listener {
 
     // main plugin reference for timezone and logging
     private final SimplePlaytimeLimiter plugin;
 
-    // players.yml file on disk
-    private final File file;
+    // data folder holding players.yml and the other backend files
+    private final File folder;
 
-    // in memory yaml representation
-    private final YamlConfiguration yaml;
+    // persistence backend selected by storage.backend
+    private final StorageBackend backend;
+
+    // counters for the current day, swapped at rollover
+    // guarded by this store
+    private DayCounters live;
+
+    // finished days that still have changes the backend has not taken yet
+    private final List<DayCounters> closedDays = new ArrayList<>();
+
+    // the day before the live one, kept until the next rollover for session time from before midnight
+    private DayCounters previous;
+    private boolean previousComplete;
+
+    // epoch millis when the live day started, session time before it belongs to the previous day
+    private long dayStart;
+
+    // sequence number of the last change handed to the backend
+    private long seq;
+
+    // true once every stored entry of the live day is in the table, so misses need no lookup
+    // only a day that started while the plugin was running is complete
+    private boolean liveComplete;
+
+    // minutes per player ranked for today and the current week
+    private final RankingIndex ranking;
+
+    // players that left, oldest first, with the time they quit
+    private final Map<UUID, Long> leftAt = new LinkedHashMap<>();
+
+    // how long a quit player's counters stay cached for a quick rejoin
+    private static final long EVICT_AFTER_MS = 5 * 60_000L;
+
+    // cached offline players beyond this count are dropped early once saved
+    private static final int MAX_IDLE_ENTRIES = 2_000;
 
     public PlayerDataStore(SimplePlaytimeLimiter plugin) {
+        this(plugin, (folder, changes) -> switch (plugin.getConfig().getString("storage.backend", "yaml").toLowerCase()) {
+            case "sqlite" -> new SqliteStorage(plugin, folder, changes);
+            case "mmap" -> new MappedStorage(plugin, folder, changes);
+            default -> new YamlStorage(plugin, folder, changes);
+        });
+    }
+
+    // store on a backend made by the caller from the data folder and the change source
+    // the benchmarks use this to run the store on a backend that keeps everything in memory
+    PlayerDataStore(SimplePlaytimeLimiter plugin, BiFunction<File, Supplier<StorageBackend.Changes>, StorageBackend> backends) {
         this.plugin = plugin;
 
-        File folder = plugin.getDataFolder();
+        this.folder = plugin.getDataFolder();
         if (!folder.exists()) {
             folder.mkdirs();
         }
 
-        this.file = new File(folder, "players.yml");
-        this.yaml = YamlConfiguration.loadConfiguration(file);
+        this.backend = backends.apply(folder, this::takeChanges);
+
+        // hold the lock so a background save cannot take changes before the live table exists
+        // players are not read here, each one is loaded on its own pre login
+        synchronized (this) {
+            this.live = new DayCounters(plugin.getTime().today(plugin.getZone()));
+            this.dayStart = live.day.atStartOfDay(plugin.getZone()).toInstant().toEpochMilli();
+            this.ranking = new RankingIndex(live.day);
+            try {
+                this.seq = backend.open();
+            } catch (IOException e) {
+                throw new IllegalStateException("could not open " + backend.getClass().getSimpleName() + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    // hands a change to the backend so logging backends can append it
+    // minute changes are also queued for the other servers in network mode
+    private void record(UUID id, int delta, int warnedMask) {
+        record(id, live.day, delta, warnedMask);
+    }
+
+    private void record(UUID id, LocalDate day, int delta, int warnedMask) {
+        backend.recorded(++seq, id, day, delta, warnedMask);
+        ranking.add(id, day, delta);
+
+        NetworkSync network = plugin.getNetwork();
+        if (network != null) {
+            network.add(id, day, delta);
+        }
+    }
+
+    // makes sure a player's stored counters for today are in the live table
+    // normally done at pre login, this covers reloads and lookups of offline players
+    // callers fetch first, so this only reads storage under the lock if the entry was evicted meanwhile
+    private void ensureLoaded(UUID id) {
+        if (!liveComplete) {
+            ensureLoaded(live, id);
+        }
+    }
+
+    // loads a player's stored entry into a day table unless it is already there
+    // a player without a stored entry gets an empty one so the next lookup does not read storage again
+    private void ensureLoaded(DayCounters table, UUID id) {
+        if (table.contains(id)) {
+            return;
+        }
+
+        try {
+            DayCounters c = backend.loadPlayer(id, table.day);
+            table.load(id, c.minutes(id), c.warned(id));
+        } catch (IOException e) {
+            plugin.getLogger().warning("could not load " + id + ": " + e.getMessage());
+        }
+    }
+
+    // reads a player's stored entry of the live or previous day without holding the store lock
+    // so slow storage never stalls the server thread on another player's lookup
+    private void fetch(UUID id, LocalDate day) {
+        synchronized (this) {
+            DayCounters table = incomplete(day);
+            if (table == null || table.contains(id)) {
+                return;
+            }
+        }
+
+        DayCounters c;
+        try {
+            c = backend.loadPlayer(id, day);
+        } catch (IOException e) {
+            plugin.getLogger().warning("could not load " + id + ": " + e.getMessage());
+            return;
+        }
+
+        synchronized (this) {
+            // a change or rollover that happened meanwhile already decided the entry
+            DayCounters table = incomplete(day);
+            if (table != null && !table.contains(id)) {
+                table.load(id, c.minutes(id), c.warned(id));
+            }
+        }
+    }
+
+    // the live or previous table if the day has stored entries that may be missing from it
+    private DayCounters incomplete(LocalDate day) {
+        if (day.equals(live.day)) {
+            return liveComplete ? null : live;
+        }
+        if (previous != null && day.equals(previous.day)) {
+            return previousComplete ? null : previous;
+        }
+        return null;
+    }
+
+    // the same for today, an online player's entry is always there so this is one uncontended lock
+    private void fetchToday(UUID id) {
+        LocalDate day;
+        synchronized (this) {
+            if (liveComplete || live.contains(id)) {
+                return;
+            }
+            day = live.day;
+        }
+        fetch(id, day);
+    }
+
+    // loads a joining player's counters before the join reaches the main thread and returns todays minutes
+    // safe to call from the async login threads, which use the result to deny exhausted players
+    public int preload(UUID id) {
+        synchronized (this) {
+            leftAt.remove(id);
+        }
+
+        fetchToday(id);
+        synchronized (this) {
+            ensureLoaded(id);
+            return live.minutes(id);
+        }
     }
 
-    // returns the current date key based on the configured timezone
-    private String todayKey() {
-        ZoneId zone = plugin.getZone();
-        LocalDate today = LocalDate.now(zone);
-        return today.toString();
+    // drops saved counters of players that left a while ago
+    // called from the autosave task, a later lookup simply loads them again
+    public synchronized void evictIdle() {
+        long now = plugin.getTime().millis();
+        int evicted = 0;
+
+        Iterator<Map.Entry<UUID, Long>> it = leftAt.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<UUID, Long> e = it.next();
+            boolean expired = now - e.getValue() >= EVICT_AFTER_MS || leftAt.size() > MAX_IDLE_ENTRIES;
+            if (!expired) {
+                break;
+            }
+
+            // unsaved counters stay until the backend has taken them
+            if (live.isDirty(e.getKey())) {
+                continue;
+            }
+
+            if (live.remove(e.getKey())) {
+                evicted++;
+            }
+            it.remove();
+        }
+
+        if (evicted > 0) {
+            liveComplete = false;
+        }
     }
 
     // read the stored minutes for today
     public int getMinutesToday(UUID id) {
-        String k = "date." + todayKey() + ".players." + id;
-        return yaml.getInt(k, 0);
+        fetchToday(id);
+        synchronized (this) {
+            ensureLoaded(id);
+            return live.minutes(id);
+        }
+    }
+
+    // stored time for today plus the unflushed part of the running session after the start of the day
+    // one lock for both parts so a reader never mixes the old day's minutes with the new day's boundary
+    public long usedMillisToday(UUID id, SessionTracker sessions) {
+        fetchToday(id);
+        synchronized (this) {
+            ensureLoaded(id);
+            return live.minutes(id) * 60000L + sessions.unflushedMillis(id, dayStart);
+        }
+    }
+
+    // epoch day of the live table
+    public synchronized long getEpochDay() {
+        return live.day.toEpochDay();
+    }
+
+    // epoch millis when the live day started
+    public synchronized long getDayStart() {
+        return dayStart;
+    }
+
+    // credits session time from before midnight to the day that just ended
+    public void addMinutesToPreviousDay(UUID id, int minutes) {
+        LocalDate day;
+        synchronized (this) {
+            if (previous == null || minutes <= 0) {
+                return;
+            }
+            day = previous.day;
+        }
+        fetch(id, day);
+
+        synchronized (this) {
+            // a second rollover meanwhile would credit the wrong day
+            if (previous == null || !day.equals(previous.day)) {
+                return;
+            }
+            if (!previousComplete) {
+                ensureLoaded(previous, id);
+            }
+
+            previous.setMinutes(id, previous.minutes(id) + minutes);
+            record(id, previous.day, minutes, 0);
+
+            // the table may have been handed to the backend already, it only gives up dirty entries
+            if (!closedDays.contains(previous)) {
+                closedDays.add(previous);
+            }
+        }
+    }
+
+    // read the stored minutes of any day
+    // past days may come from disk or the archive so callers stay off the main thread
+    // storage is read without the store lock so a slow read never blocks the server thread
+    public int getMinutesOn(UUID id, LocalDate day) throws IOException {
+        fetch(id, day);
+        synchronized (this) {
+            if (day.equals(live.day)) {
+                ensureLoaded(id);
+                return live.minutes(id);
+            }
+            if (previous != null && day.equals(previous.day)) {
+                if (!previousComplete) {
+                    ensureLoaded(previous, id);
+                }
+                return previous.minutes(id);
+            }
+            for (DayCounters c : closedDays) {
+                if (day.equals(c.day) && c.contains(id)) {
+                    return c.minutes(id);
+                }
+            }
+        }
+        return backend.loadPlayer(id, day).minutes(id);
     }
 
     // add minutes to todays value and clamp to zero minimum
     public void addMinutesToday(UUID id, int minutes) {
-        String k = "date." + todayKey() + ".players." + id;
-        int current = yaml.getInt(k, 0);
-        yaml.set(k, Math.max(0, current + minutes));
+        fetchToday(id);
+        synchronized (this) {
+            ensureLoaded(id);
+            int current = live.minutes(id);
+            int next = Math.max(0, current + minutes);
+
+            if (next != current) {
+                live.setMinutes(id, next);
+                record(id, next - current, 0);
+            }
+        }
     }
 
-    // set todays value directly and persist it
+    // set todays value directly and queue a save
     public void setMinutesToday(UUID id, int minutes) {
-        String k = "date." + todayKey() + ".players." + id;
-        yaml.set(k, Math.max(0, minutes));
+        fetchToday(id);
+        synchronized (this) {
+            ensureLoaded(id);
+            int next = Math.max(0, minutes);
+            int current = live.setMinutes(id, next);
+
+            record(id, next - current, 0);
+        }
         save();
     }
 
-    // delete the entire section for todays date and persist it
-    public void resetToday() {
-        yaml.set("date." + todayKey(), null);
+    // switches to a fresh table once the date in the configured timezone has moved forward
+    // the swap and the new day start change under one lock so readers see either the old day or the new one
+    // the finished day stays as the previous day so session time from before midnight can still be credited
+    // returns false if the day did not change
+    public synchronized boolean rollover() {
+        LocalDate today = plugin.getTime().today(plugin.getZone());
+        if (!today.isAfter(live.day)) {
+            return false;
+        }
+
+        closedDays.add(live);
+        previous = live;
+        previousComplete = liveComplete;
+
+        live = new DayCounters(today);
+        dayStart = today.atStartOfDay(plugin.getZone()).toInstant().toEpochMilli();
+        ranking.roll(today);
+
+        // nothing is stored for a day that just began
+        liveComplete = true;
         save();
+        return true;
     }
 
     // check if a specific warning threshold was already sent today
     public boolean warnedToday(UUID id, int w) {
-        String k = "date." + todayKey() + ".warned." + id;
-        List<Integer> list = yaml.getIntegerList(k);
-        return list.contains(w);
+        fetchToday(id);
+        synchronized (this) {
+            ensureLoaded(id);
+            int bit = plugin.getWarnBits().bit(w);
+            return bit != 0 && (live.warned(id) & bit) != 0;
+        }
     }
 
     // mark a warning threshold as sent today
     public void markWarnedToday(UUID id, int w) {
-        String k = "date." + todayKey() + ".warned." + id;
-        List<Integer> list = new ArrayList<>(yaml.getIntegerList(k));
+        int bit = plugin.getWarnBits().bit(w);
+        if (bit == 0) {
+            return;
+        }
+
+        fetchToday(id);
+        synchronized (this) {
+            ensureLoaded(id);
+            int old = live.orWarned(id, bit);
+            if ((old & bit) == 0) {
+                record(id, 0, bit);
+            }
+        }
+    }
 
-        if (!list.contains(w)) {
-            list.add(w);
+    // fills the ranking with every day of the current week
+    // blocking, runs once in the background after startup, later changes keep it current
+    public void buildRanking() {
+        for (LocalDate day : ranking.daysToFill()) {
+            DayCounters stored;
+            try {
+                stored = backend.loadDay(day);
+            } catch (IOException e) {
+                plugin.getLogger().warning("could not read " + day + " for the ranking: " + e.getMessage());
+                stored = new DayCounters(day);
+            }
+
+            // the tables in memory are newer than storage for every player they hold
+            synchronized (this) {
+                ranking.fill(stored, tableFor(day));
+            }
         }
+        ranking.markReady();
+    }
+
+    public RankingIndex getRanking() {
+        return ranking;
+    }
 
-        yaml.set(k, list);
+    // the in memory table of a day if it still has one
+    private DayCounters tableFor(LocalDate day) {
+        if (day.equals(live.day)) {
+            return live;
+        }
+        if (previous != null && day.equals(previous.day)) {
+            return previous;
+        }
+        for (DayCounters c : closedDays) {
+            if (day.equals(c.day)) {
+                return c;
+            }
+        }
+        return null;
     }
 
-    // persist current yaml state to players.yml
+    // ask the backend to persist pending changes soon
     public void save() {
-        try {
-            yaml.save(file);
-        } catch (IOException e) {
-            plugin.getLogger().warning("could not save players.yml: " + e.getMessage());
+        backend.requestSave();
+    }
+
+    // write pending data and wait until it is on disk
+    // only used on shutdown
+    public void close() {
+        backend.close();
+    }
+
+    // streams every day from players.yml into the active backend
+    // blocking, called off the main thread by /pt migrate
+    // todays entries are merged into the live table as well so the next save keeps them
+    public int importYaml() throws IOException {
+        if (backend instanceof YamlStorage) {
+            throw new IOException("players.yml is already the active backend");
+        }
+
+        File source = new File(folder, "players.yml");
+        if (!source.exists()) {
+            throw new IOException("players.yml not found");
+        }
+
+        YamlConfiguration yaml = YamlConfiguration.loadConfiguration(source);
+        int rows = 0;
+
+        for (String key : YamlStorage.dayKeys(yaml)) {
+            LocalDate day;
+            try {
+                day = LocalDate.parse(key);
+            } catch (RuntimeException e) {
+                continue;
+            }
+
+            DayCounters c = YamlStorage.readDay(yaml, day, plugin.getWarnBits());
+            backend.importDay(c);
+            rows += c.size();
+
+            synchronized (this) {
+                if (!day.equals(live.day)) {
+                    continue;
+                }
+                liveComplete = false;
+            }
+
+            // stored entries of todays players are read before taking the lock, like any other lookup
+            for (int i = 0; i < c.capacity(); i++) {
+                UUID id = c.keyAt(i);
+                if (id != null) {
+                    fetch(id, day);
+                }
+            }
+
+            synchronized (this) {
+                if (day.equals(live.day)) {
+                    mergeIntoLive(c);
+                }
+            }
+        }
+
+        return rows;
+    }
+
+    // keeps the higher minute value and all warnings of an imported day
+    // the entries were fetched just before, so this only reads storage for ones evicted meanwhile
+    private void mergeIntoLive(DayCounters c) {
+        for (int i = 0; i < c.capacity(); i++) {
+            UUID id = c.keyAt(i);
+            if (id == null) {
+                continue;
+            }
+
+            ensureLoaded(id);
+            int current = live.minutes(id);
+            if (c.minutesAt(i) > current) {
+                live.setMinutes(id, c.minutesAt(i));
+                ranking.add(id, live.day, c.minutesAt(i) - current);
+            }
+            live.orWarned(id, c.warnedAt(i));
+        }
+    }
+
+    // moves all changes since the last call out of the live tables
+    // called by the backend on its writer thread
+    private synchronized StorageBackend.Changes takeChanges() {
+        List<DayCounters> days = new ArrayList<>(closedDays.size() + 1);
+        for (DayCounters c : closedDays) {
+            days.add(c.takeDirty());
+        }
+        closedDays.clear();
+        days.add(live.takeDirty());
+
+        return new StorageBackend.Changes(days, seq);
+    }
+
+    // loads the player's counters while the login is still off the main thread
+    // and lets the main plugin refuse players without time left before they join
+    @EventHandler(priority = EventPriority.HIGH)
+    public void onPreLogin(AsyncPlayerPreLoginEvent e) {
+        if (e.getLoginResult() == AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            plugin.onPreLogin(e, preload(e.getUniqueId()));
+        }
+    }
+
+    // a refused login never quits, so its preloaded entry is queued for eviction like one of a player who left
+    // covers refusals by this plugin and by any other plugin after the preload
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPreLoginResult(AsyncPlayerPreLoginEvent e) {
+        if (e.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED && Bukkit.getPlayer(e.getUniqueId()) == null) {
+            markLeft(e.getUniqueId());
         }
     }
 
@@ -109,10 +564,17 @@ public class PlayerDataStore implements Listener {
         plugin.onJoin(e.getPlayer());
     }
 
-    // forward quit event handling to the main plugin and persist data
+    // forward quit event handling to the main plugin and queue a save
     @EventHandler
     public void onQuit(PlayerQuitEvent e) {
         plugin.onQuit(e.getPlayer());
+        markLeft(e.getPlayer().getUniqueId());
         save();
     }
+
+    // moves a player to the end of the eviction order
+    private synchronized void markLeft(UUID id) {
+        leftAt.remove(id);
+        leftAt.put(id, plugin.getTime().millis());
+    }
 }
@@ -0,0 +1,256 @@
+package dev.chang.spl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/*
+  append only journal for playtime changes
+  every change is one fixed size record so write cost depends on how much changed
+  records are buffered in memory and forced to disk in groups by a background thread
+  once the journal grows past a threshold it is folded into a fresh snapshot and truncated
+  a failed commit keeps its records for the next one and cuts the file back to the last complete commit first,
+  so a torn record never hides the records written after it
+*/
+final class PlaytimeJournal {
+
+    // seq msb lsb day delta warnedMask crc
+    static final int RECORD_BYTES = 40;
+
+    // bytes covered by the crc at the end of each record
+    private static final int PAYLOAD_BYTES = RECORD_BYTES - 4;
+
+    // receives records during replay
+    interface Replay {
+        void apply(long seq, UUID id, long epochDay, int delta, int warnedMask);
+    }
+
+    private final Logger logger;
+
+    // journal file and the snapshot file it is folded into
+    private final File file;
+    private final File snapshotFile;
+
+    // produces a snapshot that includes every record appended so far
+    private final Supplier<String> snapshot;
+
+    // delay between group commits
+    private final long commitMillis;
+
+    // journal size after which a compaction is started
+    private final long compactBytes;
+
+    // open channel for appends owned by the journal thread
+    private final FileChannel channel;
+
+    // single thread for group commits and compaction
+    private final ScheduledExecutorService executor;
+
+    // guards the pending buffer and the crc helper
+    private final Object lock = new Object();
+    private final CRC32 crc = new CRC32();
+
+    // records appended since the last commit and a spare buffer to swap with
+    private ByteBuffer pending = ByteBuffer.allocate(RECORD_BYTES * 256);
+    private ByteBuffer spare = ByteBuffer.allocate(RECORD_BYTES * 256);
+
+    // end of the last commit that fully reached the file, only used by the journal thread
+    private long durable;
+
+    PlaytimeJournal(Logger logger, File file, File snapshotFile, Supplier<String> snapshot,
+                    long commitMillis, long compactBytes) throws IOException {
+        this.logger = logger;
+        this.file = file;
+        this.snapshotFile = snapshotFile;
+        this.snapshot = snapshot;
+        this.commitMillis = Math.max(50L, commitMillis);
+        this.compactBytes = compactBytes;
+
+        this.channel = FileChannel.open(file.toPath(),
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "SimplePlaytimeLimiter-journal");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // reads all intact records drops a torn or corrupt tail and starts group commits
+    // must be called once before the first append so no compaction runs ahead of the replay
+    void replay(Replay sink) throws IOException {
+        long size = channel.size();
+        ByteBuffer buf = ByteBuffer.allocate(RECORD_BYTES);
+        long pos = 0;
+
+        while (pos + RECORD_BYTES <= size) {
+            buf.clear();
+            while (buf.hasRemaining()) {
+                if (channel.read(buf, pos + buf.position()) < 0) {
+                    break;
+                }
+            }
+
+            crc.reset();
+            crc.update(buf.array(), 0, PAYLOAD_BYTES);
+            if (buf.getInt(PAYLOAD_BYTES) != (int) crc.getValue()) {
+                logger.warning(file.getName() + " is damaged at byte " + pos + ", ignoring the rest");
+                break;
+            }
+
+            buf.flip();
+            long seq = buf.getLong();
+            UUID id = new UUID(buf.getLong(), buf.getLong());
+            long day = buf.getInt();
+            int delta = buf.getInt();
+            int mask = buf.getInt();
+
+            sink.apply(seq, id, day, delta, mask);
+            pos += RECORD_BYTES;
+        }
+
+        // cut off anything that is not a complete record so appends stay aligned
+        if (pos != size) {
+            channel.truncate(pos);
+        }
+        channel.position(pos);
+        durable = pos;
+
+        executor.scheduleWithFixedDelay(this::commitAndMaybeCompact, commitMillis, commitMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // buffers one record until the next group commit
+    // allocation free unless the buffer has to grow
+    void append(long seq, UUID id, long epochDay, int delta, int warnedMask) {
+        synchronized (lock) {
+            if (pending.remaining() < RECORD_BYTES) {
+                ByteBuffer bigger = ByteBuffer.allocate(pending.capacity() * 2);
+                pending.flip();
+                bigger.put(pending);
+                pending = bigger;
+            }
+
+            int start = pending.position();
+            pending.putLong(seq)
+                .putLong(id.getMostSignificantBits())
+                .putLong(id.getLeastSignificantBits())
+                .putInt((int) epochDay)
+                .putInt(delta)
+                .putInt(warnedMask);
+
+            crc.reset();
+            crc.update(pending.array(), start, PAYLOAD_BYTES);
+            pending.putInt((int) crc.getValue());
+        }
+    }
+
+    // commits pending records folds the journal into a snapshot and stops the thread
+    // blocks until everything is on disk
+    void close() {
+        try {
+            executor.submit(() -> {
+                // the snapshot holds every record even if the last commit failed
+                try {
+                    commit();
+                } finally {
+                    compact();
+                }
+                return null;
+            }).get(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            logger.warning("final journal compaction failed: " + e.getMessage());
+        } finally {
+            executor.shutdownNow();
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    // periodic group commit on the journal thread
+    private void commitAndMaybeCompact() {
+        try {
+            commit();
+            if (channel.size() >= compactBytes) {
+                compact();
+            }
+        } catch (IOException e) {
+            logger.warning("could not write " + file.getName() + ": " + e.getMessage());
+        }
+    }
+
+    // writes all pending records with a single fsync
+    // on failure the records go back in front of the pending ones and are written again by the next commit
+    private void commit() throws IOException {
+        ByteBuffer batch;
+        synchronized (lock) {
+            if (pending.position() == 0) {
+                return;
+            }
+            batch = pending;
+            pending = spare;
+        }
+
+        batch.flip();
+        try {
+            // a failed commit may have left a torn record or an unforced tail behind
+            if (channel.size() != durable) {
+                channel.truncate(durable);
+            }
+            channel.position(durable);
+
+            while (batch.hasRemaining()) {
+                channel.write(batch);
+            }
+            channel.force(false);
+            durable = channel.position();
+        } catch (IOException e) {
+            batch.rewind();
+            requeue(batch);
+            throw e;
+        }
+
+        batch.clear();
+        synchronized (lock) {
+            spare = batch;
+        }
+    }
+
+    // puts the records of a failed commit before the ones appended since
+    private void requeue(ByteBuffer batch) {
+        synchronized (lock) {
+            ByteBuffer merged = ByteBuffer.allocate(Math.max(batch.capacity(), batch.remaining() + pending.capacity()));
+            merged.put(batch);
+            pending.flip();
+            merged.put(pending);
+
+            pending.clear();
+            spare = pending;
+            pending = merged;
+        }
+    }
+
+    // writes a snapshot containing every record so far and empties the journal
+    // records appended after the snapshot are skipped on replay by their sequence number
+    private void compact() throws IOException {
+        WriteBehindSaver.writeAtomically(snapshotFile, snapshot.get());
+        channel.truncate(0);
+        channel.position(0);
+        channel.force(true);
+        durable = 0;
+    }
+}
@@ -0,0 +1,83 @@
+package dev.chang.spl;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerCommandSendEvent;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/*
+  effective limit policy per online player
+  permission checks can be expensive with permission plugins so they run once and the hot paths read the cached result
+  entries are recomputed when the server resends a player's command tree, which permission plugins trigger after a change,
+  on whitelist changes and reloads and periodically from the autosave task as a fallback
+  concurrent because folia resolves players on their region threads
+*/
+final class PolicyCache implements Listener {
+
+    // unlimited players skip the limit, limit is the daily minutes that apply otherwise
+    record Policy(boolean unlimited, int limit) {
+    }
+
+    // computes the policy from permissions and config
+    private final Function<Player, Policy> resolver;
+
+    // called when a recomputed policy differs from the cached one
+    private final Consumer<Player> changed;
+
+    private final Map<UUID, Policy> cache = new ConcurrentHashMap<>();
+
+    PolicyCache(Function<Player, Policy> resolver, Consumer<Player> changed) {
+        this.resolver = resolver;
+        this.changed = changed;
+    }
+
+    // cached policy of an online player, computed on first use
+    Policy get(Player p) {
+        Policy policy = cache.get(p.getUniqueId());
+        if (policy == null) {
+            policy = resolver.apply(p);
+            cache.put(p.getUniqueId(), policy);
+        }
+        return policy;
+    }
+
+    // recomputes a player's policy and reports it if it changed
+    void refresh(Player p) {
+        Policy next = resolver.apply(p);
+        Policy old = cache.put(p.getUniqueId(), next);
+
+        if (old != null && !old.equals(next)) {
+            changed.accept(p);
+        }
+    }
+
+    void refreshAll() {
+        for (Player p : Bukkit.getOnlinePlayers()) {
+            refresh(p);
+        }
+    }
+
+    void remove(UUID id) {
+        cache.remove(id);
+    }
+
+    void clear() {
+        cache.clear();
+    }
+
+    // permission plugins resend the command tree after a player's permissions changed
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onCommandSend(PlayerCommandSendEvent e) {
+        if (cache.containsKey(e.getPlayer().getUniqueId())) {
+            refresh(e.getPlayer());
+        }
+    }
+}
@@ -1,39 +1,69 @@
 package dev.chang.spl;
 
-import org.bukkit.Bukkit;
-import org.bukkit.OfflinePlayer;
+import com.destroystokyo.paper.event.server.AsyncTabCompleteEvent;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
 import org.bukkit.command.TabCompleter;
-import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
-import java.util.Objects;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 /*
   tab completion for the /pt command
   suggests subcommands player names and common minute values
-  uses a small ttl cache for offline names to avoid expensive lookups on every key press
+  player names come from the sorted name index so a key press never scans the player list
+  paper asks through AsyncTabCompleteEvent on the netty thread so typing costs no server thread time,
+  the plain completer stays for anything that asks the command map directly
+  everything read here is either immutable or the concurrent name index, answers are sorted and capped
 */
-public class PtTabCompleter implements TabCompleter {
+public class PtTabCompleter implements TabCompleter, Listener {
 
-    @SuppressWarnings("unused")
+    // main plugin reference for the configured timezone
     private final SimplePlaytimeLimiter plugin;
 
-    // cache of offline player names to reduce repeated bukkit offline scans
-    private volatile List<String> offlineNameCache = Collections.emptyList();
-    private volatile long offlineCacheMillis = 0L;
-    private static final long OFFLINE_CACHE_TTL_MS = 60_000L;
+    // keep the list small so the client ui does not get flooded
+    private static final int MAX_NAMES = 50;
+
+    // fixed suggestions, sorted so filtered results stay sorted
+    private static final List<String> SUBCOMMANDS = List.of("get", "limit", "list", "migrate", "reload", "set", "stats", "top", "whitelist");
+    private static final List<String> WHITELIST_ACTIONS = List.of("add", "addme", "list", "remove");
+    private static final List<String> RANKING_SCOPES = List.of("day", "week");
+    private static final List<String> TOP_SIZES = List.of("10", "25", "50");
+    private static final List<String> MINUTE_HINTS = List.of("15", "30", "60", "90", "120", "180");
 
     public PtTabCompleter(SimplePlaytimeLimiter plugin) {
         this.plugin = plugin;
     }
 
+    // answers /pt completions before paper falls back to the server thread
+    @EventHandler
+    public void onAsyncTabComplete(AsyncTabCompleteEvent e) {
+        if (e.isHandled() || !e.isCommand()) {
+            return;
+        }
+
+        String buffer = e.getBuffer();
+        int start = buffer.startsWith("/") ? 1 : 0;
+        int space = buffer.indexOf(' ', start);
+        if (space < 0) {
+            return;
+        }
+
+        String label = buffer.substring(start, space).toLowerCase();
+        if (!label.equals("pt") && !label.equals("simpleplaytimelimiter:pt")) {
+            return;
+        }
+
+        // a trailing space starts a new empty argument
+        String[] args = buffer.substring(space + 1).split(" ", -1);
+        e.setCompletions(onTabComplete(e.getSender(), null, label, args));
+        e.setHandled(true);
+    }
+
     @Override
     public List<String> onTabComplete(CommandSender sender, Command cmd, String alias, String[] args) {
         if (!sender.hasPermission("spl.admin")) {
@@ -42,14 +72,17 @@ public class PtTabCompleter implements TabCompleter {
 
         // root level /pt <...>
         if (args.length == 1) {
-            return prefixFilter(args[0], List.of("get", "set", "limit", "whitelist", "reload"));
+            return prefixFilter(args[0], SUBCOMMANDS);
         }
 
-        // /pt get <player|uuid>
+        // /pt get <player|uuid> [yyyy-mm-dd]
         if (args[0].equalsIgnoreCase("get")) {
             if (args.length == 2) {
                 return playerLikeArgs(args[1]);
             }
+            if (args.length == 3) {
+                return prefixFilter(args[2], List.of(plugin.getTime().today(plugin.getZone()).minusDays(1).toString()));
+            }
             return Collections.emptyList();
         }
 
@@ -72,10 +105,32 @@ public class PtTabCompleter implements TabCompleter {
             return Collections.emptyList();
         }
 
+        // /pt top [day|week] [n]
+        if (args[0].equalsIgnoreCase("top")) {
+            if (args.length == 2) {
+                return prefixFilter(args[1], RANKING_SCOPES);
+            }
+            if (args.length == 3) {
+                return prefixFilter(args[2], TOP_SIZES);
+            }
+            return Collections.emptyList();
+        }
+
+        // /pt list --over <min>
+        if (args[0].equalsIgnoreCase("list")) {
+            if (args.length == 2) {
+                return prefixFilter(args[1], List.of("--over"));
+            }
+            if (args.length == 3) {
+                return numberHints(args[2], 0, 1440);
+            }
+            return Collections.emptyList();
+        }
+
         // /pt whitelist <add|remove|list|addme> ...
         if (args[0].equalsIgnoreCase("whitelist")) {
             if (args.length == 2) {
-                return prefixFilter(args[1], List.of("add", "remove", "list", "addme"));
+                return prefixFilter(args[1], WHITELIST_ACTIONS);
             }
             if (args.length == 3 && (args[1].equalsIgnoreCase("add") || args[1].equalsIgnoreCase("remove"))) {
                 return playerLikeArgs(args[2]);
@@ -86,55 +141,23 @@ public class PtTabCompleter implements TabCompleter {
         return Collections.emptyList();
     }
 
-    // returns online and cached offline names filtered by the typed prefix
+    // returns known player names starting with the typed prefix
     private List<String> playerLikeArgs(String prefix) {
-        refreshOfflineCacheIfNeeded();
-
-        Stream<String> online = Bukkit.getOnlinePlayers().stream().map(Player::getName);
-        Stream<String> all = Stream.concat(online, offlineNameCache.stream());
-
-        String p = prefix == null ? "" : prefix.toLowerCase();
-
-        // keep the list small so the client ui does not get flooded
-        return all
-            .filter(Objects::nonNull)
-            .distinct()
-            .filter(n -> n.toLowerCase().startsWith(p))
-            .limit(50)
-            .collect(Collectors.toList());
-    }
-
-    // refreshes the offline name cache if ttl expired
-    private void refreshOfflineCacheIfNeeded() {
-        long now = System.currentTimeMillis();
-        if (now - offlineCacheMillis < OFFLINE_CACHE_TTL_MS) {
-            return;
-        }
-
-        List<String> names = new ArrayList<>();
-        for (OfflinePlayer op : Bukkit.getOfflinePlayers()) {
-            String n = op.getName();
-            if (n != null && !n.isBlank()) {
-                names.add(n);
-            }
-        }
-
-        offlineNameCache = names;
-        offlineCacheMillis = now;
+        return plugin.getNames().complete(prefix, MAX_NAMES);
     }
 
     // filters a list of options by prefix
+    // options are lowercase already
     private List<String> prefixFilter(String prefix, Collection<String> options) {
         String p = prefix == null ? "" : prefix.toLowerCase();
         return options.stream()
-            .filter(o -> o.toLowerCase().startsWith(p))
+            .filter(o -> o.startsWith(p))
             .collect(Collectors.toList());
     }
 
     // returns a small set of common values as hints
     // min and max are kept for potential future use but not enforced here
     private List<String> numberHints(String typed, int min, int max) {
-        List<String> base = List.of("15", "30", "60", "90", "120", "180");
-        return prefixFilter(typed, base);
+        return prefixFilter(typed, MINUTE_HINTS);
     }
 }
@@ -0,0 +1,183 @@
+package dev.chang.spl;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.UUID;
+
+/*
+  minutes per player ordered from most to least for every day of the current week and the week as a whole
+  the store hands in every minute change so a ranking never has to scan or sort a whole day
+  an update moves one entry in a sorted tree, top n and threshold queries only walk the entries they return
+  days are filled once from storage in the background, queries wait for that with isReady
+  guarded by this index, the store calls in while holding its own lock so the order is always store then index
+*/
+final class RankingIndex {
+
+    // one player's minutes in a ranking
+    record Entry(UUID id, int minutes) {
+    }
+
+    // most minutes first, uuid breaks ties so every player has exactly one place
+    private static final Comparator<Entry> ORDER = Comparator
+        .comparingInt(Entry::minutes).reversed()
+        .thenComparing(Entry::id);
+
+    // the minutes of each player and the same values in rank order
+    private static final class Ranking {
+        final Map<UUID, Integer> minutes = new HashMap<>();
+        final TreeSet<Entry> order = new TreeSet<>(ORDER);
+
+        void add(UUID id, int delta) {
+            int old = minutes.getOrDefault(id, 0);
+            int next = Math.max(0, old + delta);
+            if (next == old) {
+                return;
+            }
+
+            if (old > 0) {
+                order.remove(new Entry(id, old));
+            }
+            if (next > 0) {
+                minutes.put(id, next);
+                order.add(new Entry(id, next));
+            } else {
+                minutes.remove(id);
+            }
+        }
+
+        List<Entry> top(int n) {
+            List<Entry> out = new ArrayList<>(Math.min(n, order.size()));
+            Iterator<Entry> it = order.iterator();
+            while (out.size() < n && it.hasNext()) {
+                out.add(it.next());
+            }
+            return out;
+        }
+
+        List<Entry> over(int min) {
+            List<Entry> out = new ArrayList<>();
+            for (Entry e : order) {
+                if (e.minutes <= min) {
+                    break;
+                }
+                out.add(e);
+            }
+            return out;
+        }
+    }
+
+    // rankings of the days of the current week that were filled already
+    private final Map<LocalDate, Ranking> days = new HashMap<>();
+
+    // totals of the filled days
+    private final Ranking week = new Ranking();
+
+    // monday of the current week and the current day
+    private LocalDate weekStart;
+    private LocalDate today;
+
+    // true once every day of the week up to today was filled
+    private boolean ready;
+
+    RankingIndex(LocalDate today) {
+        this.today = today;
+        this.weekStart = weekStart(today);
+    }
+
+    static LocalDate weekStart(LocalDate day) {
+        return day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+    }
+
+    // applies a minute change, days that are not filled yet or outside the week are ignored
+    synchronized void add(UUID id, LocalDate day, int delta) {
+        Ranking r = days.get(day);
+        if (r != null && delta != 0) {
+            r.add(id, delta);
+            week.add(id, delta);
+        }
+    }
+
+    // puts the full counters of one day in place, called with the store lock held so no change is missed
+    synchronized void fill(DayCounters stored, DayCounters current) {
+        LocalDate day = stored.day;
+        if (day.isBefore(weekStart) || day.isAfter(today) || days.containsKey(day)) {
+            return;
+        }
+
+        Ranking r = new Ranking();
+        for (int i = 0; i < stored.capacity(); i++) {
+            UUID id = stored.keyAt(i);
+            if (id != null && (current == null || !current.contains(id))) {
+                r.add(id, stored.minutesAt(i));
+            }
+        }
+        // players loaded in memory may have changes storage has not seen yet
+        if (current != null) {
+            for (int i = 0; i < current.capacity(); i++) {
+                UUID id = current.keyAt(i);
+                if (id != null) {
+                    r.add(id, current.minutesAt(i));
+                }
+            }
+        }
+
+        days.put(day, r);
+        for (Map.Entry<UUID, Integer> e : r.minutes.entrySet()) {
+            week.add(e.getKey(), e.getValue());
+        }
+    }
+
+    // marks the week as complete once all days were filled
+    synchronized void markReady() {
+        ready = true;
+    }
+
+    synchronized boolean isReady() {
+        return ready;
+    }
+
+    // starts a new day, which is empty, and drops the old week when a new one begins
+    synchronized void roll(LocalDate next) {
+        this.today = next;
+
+        LocalDate start = weekStart(next);
+        if (!start.equals(weekStart)) {
+            weekStart = start;
+            days.clear();
+            week.minutes.clear();
+            week.order.clear();
+        }
+        days.put(next, new Ranking());
+    }
+
+    // the n players with the most minutes today or this week
+    synchronized List<Entry> top(boolean wholeWeek, int n) {
+        Ranking r = wholeWeek ? week : days.get(today);
+        return r == null ? List.of() : r.top(n);
+    }
+
+    // every player with more than min minutes today or this week, most first
+    synchronized List<Entry> over(boolean wholeWeek, int min) {
+        Ranking r = wholeWeek ? week : days.get(today);
+        return r == null ? List.of() : r.over(min);
+    }
+
+    // days of the week up to today, oldest first
+    synchronized List<LocalDate> daysToFill() {
+        List<LocalDate> out = new ArrayList<>();
+        for (LocalDate d = weekStart; !d.isAfter(today); d = d.plusDays(1)) {
+            if (!days.containsKey(d)) {
+                out.add(d);
+            }
+        }
+        return out;
+    }
+}
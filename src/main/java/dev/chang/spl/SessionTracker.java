@@ -0,0 +1,206 @@
+package dev.chang.spl;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+  running play sessions of online players measured in milliseconds
+  elapsed time comes from the monotonic clock of the time source so wall clock jumps never add or remove playtime
+  each session collects the time that was not moved into storage yet, only whole minutes are handed out
+  and the rest stays for the next flush, after a quit it waits for the player's next session of the same day
+  so flushing more often never loses time
+  a paused session, one of an idle player, keeps its mark on the current time without counting
+  each session is guarded by itself because folia updates players from their region threads
+  nothing here calls into the store, so the store may ask for unflushed time while holding its lock
+*/
+final class SessionTracker {
+
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+    private static final long MILLIS_PER_MINUTE = 60_000L;
+
+    private static final class Session {
+        // monotonic time up to which elapsed time is already in pending
+        long mark;
+
+        // counted milliseconds that were not handed out as minutes yet
+        long pending;
+
+        // true while the player is idle, time passes without being counted
+        boolean paused;
+
+        Session(long mark, long pending) {
+            this.mark = mark;
+            this.pending = pending;
+        }
+
+        // moves the time since the mark into pending, sub millisecond nanos stay behind the mark
+        // a paused session only moves its mark
+        void advance(long now) {
+            if (paused) {
+                if (now - mark > 0) {
+                    mark = now;
+                }
+                return;
+            }
+
+            long millis = (now - mark) / NANOS_PER_MILLI;
+            if (millis > 0) {
+                pending += millis;
+                mark += millis * NANOS_PER_MILLI;
+            }
+        }
+
+        // takes the whole minutes out of pending
+        int takeMinutes() {
+            long minutes = pending / MILLIS_PER_MINUTE;
+            pending -= minutes * MILLIS_PER_MINUTE;
+            return (int) minutes;
+        }
+    }
+
+    private final Map<UUID, Session> sessions = new ConcurrentHashMap<>();
+
+    private final TimeSource time;
+
+    // left over milliseconds of players who quit, valid for the day they were counted on
+    private final Map<UUID, Long> carry = new ConcurrentHashMap<>();
+    private volatile long carryDay;
+
+    SessionTracker(TimeSource time) {
+        this.time = time;
+    }
+
+    // starts or restarts a player's session and picks up what their last session of the day left over
+    void start(UUID id, long epochDay) {
+        Long left = epochDay == carryDay ? carry.remove(id) : null;
+        sessions.put(id, new Session(time.nanos(), left == null ? 0L : left));
+    }
+
+    // forgets everything a running session counted so far, used when an admin sets the minutes directly
+    void reset(UUID id) {
+        carry.remove(id);
+        Session s = sessions.get(id);
+        if (s != null) {
+            synchronized (s) {
+                s.mark = time.nanos();
+                s.pending = 0L;
+            }
+        }
+    }
+
+    // counted time of a running session that is not in storage yet, only the part after the day start
+    long unflushedMillis(UUID id, long dayStartWall) {
+        Session s = sessions.get(id);
+        if (s == null) {
+            return 0L;
+        }
+
+        long now = time.nanos();
+        long boundary = toNanos(dayStartWall, now);
+        synchronized (s) {
+            // a session that is not split yet still holds the old day in pending
+            if (s.mark - boundary < 0) {
+                return s.paused ? 0L : Math.max(0L, (now - boundary) / NANOS_PER_MILLI);
+            }
+            return s.pending + (s.paused ? 0L : Math.max(0L, (now - s.mark) / NANOS_PER_MILLI));
+        }
+    }
+
+    // stops counting at the given monotonic time, which may lie in the past, does nothing for a paused session
+    void pause(UUID id, long atNanos) {
+        Session s = sessions.get(id);
+        if (s == null) {
+            return;
+        }
+
+        synchronized (s) {
+            if (!s.paused) {
+                s.advance(Math.min(time.nanos(), atNanos));
+                s.paused = true;
+            }
+        }
+    }
+
+    // counts again from the given monotonic time, does nothing for a running session
+    void resume(UUID id, long atNanos) {
+        Session s = sessions.get(id);
+        if (s == null) {
+            return;
+        }
+
+        synchronized (s) {
+            if (s.paused) {
+                s.advance(Math.min(time.nanos(), atNanos));
+                s.paused = false;
+            }
+        }
+    }
+
+    // takes the whole minutes a session counted before the day start, they belong to the previous day
+    // the sub minute rest moves on into the new day so no time is dropped at midnight
+    int splitAt(UUID id, long dayStartWall) {
+        Session s = sessions.get(id);
+        if (s == null) {
+            return 0;
+        }
+
+        long now = time.nanos();
+        long boundary = toNanos(dayStartWall, now);
+        synchronized (s) {
+            if (s.mark - boundary >= 0) {
+                return 0;
+            }
+            s.advance(boundary);
+            s.mark = Math.max(s.mark, boundary);
+            return s.takeMinutes();
+        }
+    }
+
+    // takes the whole minutes counted since the last flush, the rest stays in the session
+    int flush(UUID id) {
+        Session s = sessions.get(id);
+        if (s == null) {
+            return 0;
+        }
+
+        synchronized (s) {
+            s.advance(time.nanos());
+            return s.takeMinutes();
+        }
+    }
+
+    // ends a session and returns its remaining whole minutes, the rest is kept for a rejoin on the same day
+    int stop(UUID id, long epochDay) {
+        Session s = sessions.remove(id);
+        if (s == null) {
+            return 0;
+        }
+
+        synchronized (s) {
+            s.advance(time.nanos());
+            int minutes = s.takeMinutes();
+
+            if (carryDay != epochDay) {
+                carry.clear();
+                carryDay = epochDay;
+            }
+            if (s.pending > 0) {
+                carry.put(id, s.pending);
+            }
+            return minutes;
+        }
+    }
+
+    void clear() {
+        sessions.clear();
+        carry.clear();
+    }
+
+    // places a wall clock time on the monotonic clock with the offset between the two clocks right now
+    // so a wall clock step since enable moves the day start with it, a start that is not reached yet counts as now
+    private long toNanos(long wall, long now) {
+        long at = now + (wall - time.millis()) * NANOS_PER_MILLI;
+        return at - now > 0 ? now : at;
+    }
+}
@@ -0,0 +1,127 @@
+package dev.chang.spl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/*
+  spreads a periodic per player task over the ticks of its interval
+  players are split into one bucket per tick by uuid hash and each tick queues the next bucket
+  queued work runs until the per tick time budget is used up and the rest carries over to the next tick
+  so every player is still visited once per interval while the cost per tick stays flat
+  a player is queued at most once, so a queue that fell behind never grows past the number of players
+  a budget of zero or less turns the budget off and every tick works through the whole queue
+  ticks run on one thread, joins and quits may come from region threads on folia so state is guarded by this ticker
+*/
+final class ShardedTicker {
+
+    // called once per player and interval
+    private final Consumer<UUID> action;
+
+    // one bucket per tick of the interval
+    private List<List<UUID>> buckets = new ArrayList<>();
+
+    // bucket that is queued on the next tick
+    private int cursor;
+
+    // players waiting for their update, may carry over from earlier ticks
+    // only ids in queued are live, removed players stay in the deque until they are polled
+    private final ArrayDeque<UUID> work = new ArrayDeque<>();
+    private final Set<UUID> queued = new HashSet<>();
+
+    // time a single tick may spend on queued work
+    private long budgetNanos;
+
+    ShardedTicker(Consumer<UUID> action) {
+        this.action = action;
+    }
+
+    // sets the interval in ticks and the per tick budget, existing players are kept
+    synchronized void configure(int intervalTicks, long budgetNanos) {
+        List<UUID> all = new ArrayList<>();
+        for (List<UUID> b : buckets) {
+            all.addAll(b);
+        }
+
+        this.buckets = new ArrayList<>(Math.max(1, intervalTicks));
+        for (int i = 0; i < Math.max(1, intervalTicks); i++) {
+            buckets.add(new ArrayList<>());
+        }
+        this.cursor = 0;
+        this.budgetNanos = budgetNanos;
+
+        for (UUID id : all) {
+            add(id);
+        }
+    }
+
+    synchronized void add(UUID id) {
+        List<UUID> b = bucket(id);
+        if (!b.contains(id)) {
+            b.add(id);
+        }
+    }
+
+    synchronized void remove(UUID id) {
+        bucket(id).remove(id);
+        queued.remove(id);
+    }
+
+    synchronized void clear() {
+        for (List<UUID> b : buckets) {
+            b.clear();
+        }
+        work.clear();
+        queued.clear();
+    }
+
+    // queues the next bucket and works through the queue until the budget is spent
+    // returns the number of players handled
+    int tick() {
+        long deadline;
+        boolean budgeted;
+        synchronized (this) {
+            // players still waiting from an earlier round keep their place
+            for (UUID id : buckets.get(cursor)) {
+                if (queued.add(id)) {
+                    work.add(id);
+                }
+            }
+            cursor = (cursor + 1) % buckets.size();
+            budgeted = budgetNanos > 0;
+            deadline = System.nanoTime() + budgetNanos;
+        }
+
+        // the action runs outside the lock so it may join or quit players itself
+        int handled = 0;
+        UUID id;
+        while ((id = next()) != null) {
+            action.accept(id);
+            handled++;
+
+            if (budgeted && System.nanoTime() - deadline > 0) {
+                break;
+            }
+        }
+        return handled;
+    }
+
+    // next live queued player, skipping the ones removed meanwhile
+    private synchronized UUID next() {
+        UUID id;
+        while ((id = work.poll()) != null) {
+            if (queued.remove(id)) {
+                return id;
+            }
+        }
+        return null;
+    }
+
+    private List<UUID> bucket(UUID id) {
+        return buckets.get(Math.floorMod(id.hashCode(), buckets.size()));
+    }
+}
@@ -2,28 +2,34 @@ package dev.chang.spl;
 
 import net.kyori.adventure.text.Component;
 import org.bukkit.Bukkit;
-import org.bukkit.boss.BarColor;
-import org.bukkit.boss.BarStyle;
-import org.bukkit.boss.BossBar;
 import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Player;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
 import org.bukkit.plugin.java.JavaPlugin;
-import org.bukkit.scheduler.BukkitRunnable;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.time.ZoneId;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /*
   simple daily playtime limiter for paper servers
   tracks minutes per day in players.yml and enforces a configurable daily limit
   supports warnings a bypass permission a whitelist and optional ui via bossbar and actionbar
+  runs on paper and on folia, player work always goes through the player's own scheduler
 */
 public final class SimplePlaytimeLimiter extends JavaPlugin {
 
@@ -36,8 +42,11 @@ public final class SimplePlaytimeLimiter extends JavaPlugin {
     private Set<UUID> whitelist;
     private int saveIntervalSec;
 
+    // timers and counters of the hot paths, shown by /pt stats and exported for prometheus
+    private final Metrics metrics = new Metrics();
+
     // ui state per player
-    private final Map<UUID, BossBar> bossBars = new HashMap<>();
+    private final BossBarRenderer bars = new BossBarRenderer();
 
     // ui config loaded from config.yml
     private boolean uiBossbar;
@@ -47,32 +56,133 @@ public final class SimplePlaytimeLimiter extends JavaPlugin {
     private String uiTitle;
     private String uiActionbarMsg;
     private int uiUpdateIntervalSec;
+    private int uiTickBudgetMicros;
+
+    // spreads bossbar updates over the ticks of the update interval
+    private final ShardedTicker uiTicker = new ShardedTicker(this::dispatchUi);
+
+    // paper or folia scheduling
+    private TaskScheduler tasks;
 
     // background tasks
-    private BukkitRunnable uiTickTask;
-    private BukkitRunnable autosaveTask;
-    private BukkitRunnable midnightTask;
+    private TaskScheduler.Task uiTickTask;
+    private TaskScheduler.Task autosaveTask;
+    private TaskScheduler.Task deadlineTask;
+    private TaskScheduler.Task activityTask;
+
+    // wall clock watcher for the daily reset
+    private MidnightClock midnightClock;
+
+    // players whose session still has to be split after a day change, global thread only
+    private final ArrayDeque<UUID> rolloverQueue = new ArrayDeque<>();
+    private TaskScheduler.Task rolloverTask;
+
+    // work time of the running day change summed over its ticks, recorded once the queue is done
+    private long rolloverNanos;
+
+    // sessions split per tick after a day change
+    private static final int ROLLOVER_BATCH = 32;
+
+    // next warning or limit deadline per online player
+    private final DeadlineScheduler deadlines = new DeadlineScheduler(this::onDeadline);
+
+    // bypass and limit per online player so hot paths skip permission checks
+    private final PolicyCache policies = new PolicyCache(this::resolvePolicy, this::scheduleEnforce);
+
+    // time source for the next enable, only replaced by the load harness
+    static volatile TimeSource timeSource = TimeSource.SYSTEM;
+
+    // wall clock and monotonic clock for playtime, fixed for one enable
+    private TimeSource time = TimeSource.SYSTEM;
 
-    // session start timestamps for online players
-    private final Map<UUID, Long> sessionStart = new HashMap<>();
+    // running sessions of online players with their not yet stored milliseconds
+    private SessionTracker sessions;
+
+    // stable bit per warning threshold for the stored warning masks
+    private WarnBits warnBits;
+
+    // last activity per online player, pauses the sessions of idle players
+    private ActivityTracker activity;
+
+    // players last seen with the bypass permission, checked before they join
+    private KnownBypass knownBypass;
+
+    // name and uuid lookups for commands and tab completion
+    private final NameIndex names = new NameIndex();
+
+    // playtime shared with the other servers of a network, null when network mode is off
+    private NetworkSync network;
+
+    // worker pool for /pt commands that look up players or read storage
+    private CommandPipeline commands;
+
+    // writes config.yml off the server thread, the text is taken on the thread that changed the config
+    private File configFile;
+    private WriteBehindSaver configSaver;
+    private volatile String configSnapshot;
+
+    // config.yml as read by /pt reload, null until the first reload replaces the one read at startup
+    private volatile FileConfiguration config;
+
+    // in memory config changes so far, a reload read before a change is not applied over it
+    private final AtomicLong configEdits = new AtomicLong();
+
+    // config.yml with the values read off the server thread and the edit count at the time of the read
+    record LocalConfig(FileConfiguration config, long edits) {
+    }
+
+    // last limit broadcast per player so reconnect attempts do not spam chat
+    private final Map<UUID, Long> lastBroadcast = new ConcurrentHashMap<>();
+
+    // minimum time between two limit broadcasts for the same player
+    private static final long BROADCAST_COOLDOWN_MS = 10 * 60_000L;
 
     @Override
     public void onEnable() {
+        this.time = timeSource;
+        this.sessions = new SessionTracker(time);
+        this.activity = new ActivityTracker(time, sessions);
+        this.tasks = TaskScheduler.create(this);
+
         saveDefaultConfig();
+        this.warnBits = new WarnBits(getLogger(), new File(getDataFolder(), "warnbits.yml"));
         reloadLocalConfig();
 
+        this.configFile = new File(getDataFolder(), "config.yml");
+        this.configSaver = new WriteBehindSaver(getLogger(), configFile.getName(),
+            () -> WriteBehindSaver.writeAtomically(configFile, configSnapshot), 250L);
+        this.commands = new CommandPipeline(getLogger(), tasks, 2);
+
+        this.knownBypass = new KnownBypass(getLogger(), getDataFolder());
         this.store = new PlayerDataStore(this);
+        this.network = openNetwork();
 
         // register listeners
         Bukkit.getPluginManager().registerEvents(store, this);
+        Bukkit.getPluginManager().registerEvents(policies, this);
+        Bukkit.getPluginManager().registerEvents(names, this);
+        Bukkit.getPluginManager().registerEvents(activity, this);
+
+        // online players are indexed right away, everyone else once the offline list was read
+        for (Player p : Bukkit.getOnlinePlayers()) {
+            names.put(p.getUniqueId(), p.getName());
+        }
+        tasks.runAsync(store::buildRanking);
+        tasks.runAsync(() -> {
+            names.build();
+            getLogger().info("indexed " + names.size() + " player names");
+        });
 
         // register commands
+        PtTabCompleter completer = new PtTabCompleter(this);
         Objects.requireNonNull(getCommand("pt")).setExecutor(new Commands(this));
-        Objects.requireNonNull(getCommand("pt")).setTabCompleter(new PtTabCompleter(this));
+        Objects.requireNonNull(getCommand("pt")).setTabCompleter(completer);
+        Bukkit.getPluginManager().registerEvents(completer, this);
 
-        // initialize session baselines for players already online
+        // initialize sessions for players already online
         for (Player p : Bukkit.getOnlinePlayers()) {
-            sessionStart.put(p.getUniqueId(), System.currentTimeMillis());
+            sessions.start(p.getUniqueId(), store.getEpochDay());
+            activity.add(p.getUniqueId());
         }
 
         startAutosave();
@@ -81,52 +191,167 @@ public final class SimplePlaytimeLimiter extends JavaPlugin {
         // start ui ticker after config load
         startUiTicker();
 
-        getLogger().info("SimplePlaytimeLimiter enabled.");
+        // checks the head of the deadline queue every tick
+        deadlineTask = tasks.runGlobalTimer(() -> deadlines.poll(deadlineMillis()), 1L, 1L);
+        enforceAll();
+
+        // pauses and resumes sessions once a second
+        activityTask = tasks.runGlobalTimer(activity::sample, 20L, 20L);
+
+        getLogger().info("SimplePlaytimeLimiter enabled" + (tasks.isFolia() ? " (folia)." : "."));
     }
 
     @Override
     public void onDisable() {
-        // flush session minutes into storage before shutdown
-        flushAllSessions();
-        store.save();
+        // no day change may start while storage shuts down
+        if (midnightClock != null) {
+            midnightClock.close();
+        }
+
+        commands.close();
+        configSaver.close();
+
+        metrics.stopExport();
+
+        // flush session minutes into storage and block until they are on disk
+        // no ui refresh here, a disabled plugin may not schedule work on the players' threads
+        storeSessions();
+        sessions.clear();
+        activity.clear();
+        store.close();
+        knownBypass.close();
+        if (network != null) {
+            network.close();
+        }
 
         if (autosaveTask != null) {
             autosaveTask.cancel();
         }
-        if (midnightTask != null) {
-            midnightTask.cancel();
-        }
         if (uiTickTask != null) {
             uiTickTask.cancel();
         }
+        if (deadlineTask != null) {
+            deadlineTask.cancel();
+        }
+        if (rolloverTask != null) {
+            rolloverTask.cancel();
+        }
+        if (activityTask != null) {
+            activityTask.cancel();
+        }
+        deadlines.clear();
+        policies.clear();
 
         // remove bossbars from all players
-        for (BossBar bar : bossBars.values()) {
-            bar.removeAll();
-            bar.setVisible(false);
+        bars.clear();
+    }
+
+    // connects to the configured network transport and catches up with the other servers
+    // a server that cannot reach the transport keeps running on its local data only
+    private NetworkSync openNetwork() {
+        FileConfiguration c = getConfig();
+        if (!c.getBoolean("network.enabled", false)) {
+            return null;
         }
-        bossBars.clear();
+
+        // the node name must survive restarts or this server would read its own deltas back
+        String node = c.getString("network.nodeId", "");
+        if (node == null || node.isBlank()) {
+            node = UUID.randomUUID().toString();
+            c.set("network.nodeId", node);
+            saveConfig();
+        }
+
+        SqliteSyncTransport transport;
+        try {
+            File f = new File(c.getString("network.file", "network.db"));
+            transport = new SqliteSyncTransport(f.isAbsolute() ? f : new File(getDataFolder(), f.getPath()));
+            transport.open();
+        } catch (IOException e) {
+            getLogger().warning("network mode disabled: " + e.getMessage());
+            return null;
+        }
+
+        // a player online here rarely plays elsewhere at the same time, but if so their deadline moves
+        NetworkSync sync = new NetworkSync(getLogger(), node, transport, time, this::getZone, id -> {
+            Player p = Bukkit.getPlayer(id);
+            if (p != null) {
+                scheduleEnforce(p);
+            }
+        });
+        sync.start(1000L * Math.max(1, c.getInt("network.syncIntervalSeconds", 5)));
+        return sync;
     }
 
-    // reload config.yml values into runtime fields and restart ui ticker if needed
+    @Override
+    public FileConfiguration getConfig() {
+        FileConfiguration c = config;
+        return c != null ? c : super.getConfig();
+    }
+
+    // reads config.yml into runtime fields at startup
     void reloadLocalConfig() {
+        this.config = null;
         reloadConfig();
+        applyConfig();
+    }
+
+    // reads config.yml for /pt reload, blocking, called on a command worker
+    // a change still waiting for its write would be lost by reading the file again, so it is written first
+    LocalConfig readLocalConfig() throws IOException {
+        long edits = configEdits.get();
+        configSaver.flush();
+
+        YamlConfiguration c = YamlConfiguration.loadConfiguration(configFile);
+        InputStream defaults = getResource("config.yml");
+        if (defaults != null) {
+            try (Reader r = new InputStreamReader(defaults, StandardCharsets.UTF_8)) {
+                c.setDefaults(YamlConfiguration.loadConfiguration(r));
+            }
+        }
+        return new LocalConfig(c, edits);
+    }
+
+    // makes a config from readLocalConfig the current one and applies it, runs on the global thread
+    // returns false without applying if the config changed in memory after the read
+    boolean applyLocalConfig(LocalConfig read) {
+        if (configEdits.get() != read.edits()) {
+            return false;
+        }
+        this.config = read.config();
+        applyConfig();
+        return true;
+    }
+
+    // writes config.yml in the background, must be called on the thread that changed the config
+    void saveConfigAsync() {
+        configEdits.incrementAndGet();
+        configSnapshot = getConfig().saveToString();
+        configSaver.requestSave();
+    }
+
+    // copies the loaded config into runtime fields without reading the file
+    void applyConfig() {
         FileConfiguration c = getConfig();
 
         this.zone = ZoneId.of(c.getString("timezone", "Europe/Berlin"));
         this.dailyLimitMin = c.getInt("dailyLimitMinutes", 120);
         this.warnAt = new ArrayList<>(c.getIntegerList("warnings"));
+        warnBits.register(warnAt);
         this.kickMsg = c.getString("kickMessage", "Daily limit reached.");
         this.broadcastMsg = c.getString("broadcast", "{player} reached daily limit.");
         this.saveIntervalSec = c.getInt("saveIntervalSeconds", 60);
+        activity.configure(c.getInt("afk.idleMinutes", 5));
 
-        this.whitelist = new HashSet<>();
+        // read by region and command threads
+        Set<UUID> whitelist = ConcurrentHashMap.newKeySet();
         for (String s : c.getStringList("whitelist")) {
             try {
                 whitelist.add(UUID.fromString(s));
             } catch (Exception ignored) {
             }
         }
+        this.whitelist = whitelist;
 
         // ui options
         this.uiBossbar = c.getBoolean("ui.bossbar", true);
@@ -136,39 +361,27 @@ public final class SimplePlaytimeLimiter extends JavaPlugin {
         this.uiTitle = c.getString("ui.title", "Spielzeit: {remaining} min");
         this.uiActionbarMsg = c.getString("ui.actionbar", "Noch {remaining} min");
         this.uiUpdateIntervalSec = c.getInt("ui.updateIntervalSeconds", 5);
+        this.uiTickBudgetMicros = c.getInt("ui.tickBudgetMicros", 1000);
+
+        metrics.startExport(getLogger(), new File(getDataFolder(), "metrics.prom"),
+            c.getInt("metrics.exportIntervalSeconds", 30));
+
+        // titles and colors are rendered again with the new values
+        bars.configure(uiTitle, dailyLimitMin, uiGreenAbove, uiYellowAbove);
 
         // apply interval changes immediately
         startUiTicker();
+
+        // limit and warnings may have changed so every deadline is recomputed
+        if (store != null) {
+            enforceAll();
+        }
     }
 
     // updates bossbar for one player or hides it if disabled
     private void updateUi(Player p, int remaining, boolean unlimited) {
         if (uiBossbar && (dailyLimitMin > 0 || unlimited)) {
-            BossBar bar = bossBars.computeIfAbsent(
-                p.getUniqueId(),
-                id -> Bukkit.createBossBar("", BarColor.GREEN, BarStyle.SEGMENTED_10)
-            );
-
-            if (!bar.getPlayers().contains(p)) {
-                bar.addPlayer(p);
-            }
-            bar.setVisible(true);
-
-            // show infinity for unlimited players
-            String title = uiTitle.replace("{remaining}", unlimited ? "∞" : String.valueOf(remaining));
-            bar.setTitle(colorize(title));
-
-            double progress = unlimited
-                ? 1.0
-                : Math.max(0d, Math.min(1d, (remaining / (double) dailyLimitMin)));
-            bar.setProgress(progress);
-
-            BarColor col = unlimited
-                ? BarColor.BLUE
-                : (remaining > uiGreenAbove) ? BarColor.GREEN
-                : (remaining > uiYellowAbove) ? BarColor.YELLOW
-                : BarColor.RED;
-            bar.setColor(col);
+            bars.render(p, remaining, unlimited);
         } else {
             hideUi(p);
         }
@@ -176,16 +389,7 @@ public final class SimplePlaytimeLimiter extends JavaPlugin {
 
     // removes bossbar for a player if present
     private void hideUi(Player p) {
-        BossBar bar = bossBars.remove(p.getUniqueId());
-        if (bar != null) {
-            bar.removeAll();
-            bar.setVisible(false);
-        }
-    }
-
-    // allow legacy color codes in bossbar title
-    private String colorize(String s) {
-        return s == null ? "" : s.replace('&', '§');
+        bars.hide(p.getUniqueId());
     }
 
     // getters used by other classes
@@ -205,6 +409,10 @@ public final class SimplePlaytimeLimiter extends JavaPlugin {
         return warnAt;
     }
 
+    WarnBits getWarnBits() {
+        return warnBits;
+    }
+
     public String getKickMsg() {
         return kickMsg;
     }
@@ -217,48 +425,127 @@ public final class SimplePlaytimeLimiter extends JavaPlugin {
         return store;
     }
 
-    public Map<UUID, Long> getSessionStartMap() {
-        return sessionStart;
+    NetworkSync getNetwork() {
+        return network;
     }
 
-    // periodically flushes session time into players.yml and saves it
+    // minutes other servers of the network counted today, read from the local cache
+    int getRemoteMinutes(UUID id) {
+        return network == null ? 0 : network.remoteMinutes(id);
+    }
+
+    SessionTracker getSessions() {
+        return sessions;
+    }
+
+    ActivityTracker getActivity() {
+        return activity;
+    }
+
+    TimeSource getTime() {
+        return time;
+    }
+
+    Metrics getMetrics() {
+        return metrics;
+    }
+
+    NameIndex getNames() {
+        return names;
+    }
+
+    CommandPipeline getCommands() {
+        return commands;
+    }
+
+    TaskScheduler getTasks() {
+        return tasks;
+    }
+
+    // periodically flushes session time into players.yml, queues a save and drops idle cached players
     void startAutosave() {
         if (autosaveTask != null) {
             autosaveTask.cancel();
         }
 
-        autosaveTask = new BukkitRunnable() {
-            @Override
-            public void run() {
-                flushAllSessions();
-                store.save();
-            }
-        };
+        autosaveTask = tasks.runGlobalTimer(() -> {
+            flushAllSessions();
+            store.save();
+            store.evictIdle();
 
-        autosaveTask.runTaskTimer(this, 20L * saveIntervalSec, 20L * saveIntervalSec);
+            // catches permission changes that did not resend the command tree
+            policies.refreshAll();
+        }, 20L * saveIntervalSec, 20L * saveIntervalSec);
     }
 
-    // schedules a daily reset at the next midnight for the configured timezone
+    // starts the wall clock watcher that resets the day at midnight in the configured timezone
+    // the reset itself runs on the server thread
     void scheduleMidnightReset() {
-        if (midnightTask != null) {
-            midnightTask.cancel();
+        if (midnightClock != null) {
+            midnightClock.close();
         }
 
-        long ticksUntil = TimeUtil.ticksUntilNextMidnight(zone);
-        midnightTask = new BukkitRunnable() {
-            @Override
-            public void run() {
+        midnightClock = new MidnightClock(time, this::getZone, () -> tasks.runGlobal(() -> {
+            // the swap is a single step, splitting sessions and new deadlines follow over the next ticks
+            long start = System.nanoTime();
+            if (store.rollover()) {
                 getLogger().info("Daily reset…");
-                flushAllSessions();
-                store.resetToday();
-                scheduleMidnightReset();
+                lastBroadcast.clear();
+                startRollover();
+                rolloverNanos += System.nanoTime() - start;
             }
-        };
+        }));
+        midnightClock.start();
+    }
 
-        midnightTask.runTaskLater(this, ticksUntil);
+    // queues every online player for the session split after a day change
+    private void startRollover() {
+        for (Player p : Bukkit.getOnlinePlayers()) {
+            rolloverQueue.add(p.getUniqueId());
+        }
+
+        if (rolloverTask == null) {
+            rolloverTask = tasks.runGlobalTimer(this::continueRollover, 1L, 1L);
+        }
+    }
+
+    // splits a batch of sessions at the day boundary and recomputes their deadlines
+    private void continueRollover() {
+        long start = System.nanoTime();
+        for (int i = 0; i < ROLLOVER_BATCH; i++) {
+            UUID id = rolloverQueue.poll();
+            if (id == null) {
+                rolloverTask.cancel();
+                rolloverTask = null;
+
+                // one sample per day change covering the swap and every batch
+                metrics.rollover.record(rolloverNanos + System.nanoTime() - start);
+                rolloverNanos = 0L;
+                return;
+            }
+
+            splitSession(id);
+
+            Player p = Bukkit.getPlayer(id);
+            if (p != null) {
+                policies.remove(id);
+                scheduleEnforce(p);
+            }
+        }
+        rolloverNanos += System.nanoTime() - start;
+    }
+
+    // moves session time from before the start of the current day to the previous day
+    // readers already ignore that part, so it does not matter when a player's split runs
+    private void splitSession(UUID id) {
+        int minutes = sessions.splitAt(id, store.getDayStart());
+        if (minutes > 0) {
+            store.addMinutesToPreviousDay(id, minutes);
+        }
     }
 
-    // periodic ui ticker that recalculates remaining time and updates bossbars
+    // ui ticker that recalculates remaining time and updates bossbars
+    // each tick handles one shard of the online players so the work is spread over the interval
     void startUiTicker() {
         if (uiTickTask != null) {
             uiTickTask.cancel();
@@ -266,70 +553,123 @@ public final class SimplePlaytimeLimiter extends JavaPlugin {
 
         if (!uiBossbar) {
             for (Player p : Bukkit.getOnlinePlayers()) {
-                hideUi(p);
+                tasks.runForPlayer(p, () -> hideUi(p));
             }
+            uiTicker.clear();
             uiTickTask = null;
             return;
         }
 
-        uiTickTask = new BukkitRunnable() {
-            @Override
-            public void run() {
-                long now = System.currentTimeMillis();
+        uiTicker.configure(20 * Math.max(1, uiUpdateIntervalSec), Math.max(0, uiTickBudgetMicros) * 1000L);
+        for (Player p : Bukkit.getOnlinePlayers()) {
+            uiTicker.add(p.getUniqueId());
+        }
 
-                for (Player p : Bukkit.getOnlinePlayers()) {
-                    UUID id = p.getUniqueId();
-                    boolean unlimited = p.hasPermission("spl.bypass") || whitelist.contains(id);
+        uiTickTask = tasks.runGlobalTimer(() -> {
+            long start = System.nanoTime();
+            int players = uiTicker.tick();
+            metrics.uiTick.since(start);
+            metrics.uiPlayers.record(players);
+        }, 1L, 1L);
+    }
 
-                    int remaining = 0;
-                    if (!unlimited) {
-                        int used = store.getMinutesToday(id);
-                        Long start = sessionStart.get(id);
-                        if (start != null) {
-                            used += (int) ((now - start) / 60000L);
-                        }
-                        remaining = Math.max(0, dailyLimitMin - used);
-                    }
+    // hands one player's ui refresh to the thread that owns the player
+    private void dispatchUi(UUID id) {
+        Player p = Bukkit.getPlayer(id);
+        if (p != null) {
+            tasks.runForPlayer(p, () -> refreshUi(p));
+        }
+    }
 
-                    updateUi(p, remaining, unlimited);
-                }
-            }
-        };
+    // recalculates remaining time for one player and updates the bossbar
+    private void refreshUi(Player p) {
+        UUID id = p.getUniqueId();
+        PolicyCache.Policy policy = policies.get(p);
+
+        int remaining = 0;
+        if (!policy.unlimited()) {
+            long used = store.usedMillisToday(id, sessions) + getRemoteMinutes(id) * 60000L;
+            remaining = Math.max(0, policy.limit() - (int) (used / 60000L));
+        }
 
-        uiTickTask.runTaskTimer(this, 20L, 20L * Math.max(1, uiUpdateIntervalSec));
+        updateUi(p, remaining, policy.unlimited());
     }
 
-    // adds elapsed minutes since last baseline into storage for all online players
-    // also enforces limits and refreshes ui
+    // moves whole session minutes into storage for all online players and refreshes ui
+    // the sub minute rest stays in the session so flushing often never loses time
+    // enforcement runs from the deadline queue so this does not change any deadline
     void flushAllSessions() {
-        long now = System.currentTimeMillis();
+        long start = System.nanoTime();
+        storeSessions();
+        for (Player p : Bukkit.getOnlinePlayers()) {
+            tasks.runForPlayer(p, () -> refreshUi(p));
+        }
+        metrics.flushSessions.since(start);
+    }
 
+    // moves whole session minutes into storage without touching any player, also used on shutdown
+    private void storeSessions() {
         for (Player p : Bukkit.getOnlinePlayers()) {
             UUID id = p.getUniqueId();
 
-            Long start = sessionStart.get(id);
-            if (start == null) {
-                continue;
-            }
+            // time from before midnight goes to the previous day first
+            splitSession(id);
 
-            long minutes = Math.max(0, (now - start) / 60000L);
+            int minutes = sessions.flush(id);
             if (minutes > 0) {
-                store.addMinutesToday(id, (int) minutes);
-                sessionStart.put(id, now);
+                store.addMinutesToday(id, minutes);
             }
+        }
+    }
+
+    // called by PlayerDataStore on the async login thread with the player's minutes for today
+    // players without time left are refused here so the join never runs for them
+    public void onPreLogin(AsyncPlayerPreLoginEvent e, int usedMinutes) {
+        UUID id = e.getUniqueId();
+        if (whitelist.contains(id) || knownBypass.contains(id)) {
+            return;
+        }
+
+        // a player coming from another server needs that server's latest minutes, blocking is fine here
+        if (network != null) {
+            network.sync();
+        }
+
+        if (dailyLimitMin - usedMinutes - getRemoteMinutes(id) > 0) {
+            return;
+        }
 
-            enforceLimit(p);
+        e.disallow(AsyncPlayerPreLoginEvent.Result.KICK_OTHER, Component.text(kickMsg));
 
-            boolean unlimited = p.hasPermission("spl.bypass") || whitelist.contains(id);
-            int usedNow = store.getMinutesToday(id);
-            int remainingNow = unlimited ? 0 : Math.max(0, dailyLimitMin - usedNow);
-            updateUi(p, remainingNow, unlimited);
+        if (shouldBroadcast(id)) {
+            String b = broadcastMsg.replace("{player}", e.getName());
+            tasks.runGlobal(() -> Bukkit.getOnlinePlayers().forEach(op -> op.sendMessage(b)));
         }
     }
 
+    // deadlines run on the monotonic clock so a wall clock step never fires or delays them
+    private long deadlineMillis() {
+        return time.nanos() / 1_000_000L;
+    }
+
+    // true at most once per cooldown for each player
+    private boolean shouldBroadcast(UUID id) {
+        long now = time.millis();
+        Long last = lastBroadcast.get(id);
+        if (last != null && now - last < BROADCAST_COOLDOWN_MS) {
+            return false;
+        }
+        lastBroadcast.put(id, now);
+        return true;
+    }
+
     // called by PlayerDataStore on join
     public void onJoin(Player p) {
-        sessionStart.put(p.getUniqueId(), System.currentTimeMillis());
+        sessions.start(p.getUniqueId(), store.getEpochDay());
+        activity.add(p.getUniqueId());
+        if (uiTickTask != null) {
+            uiTicker.add(p.getUniqueId());
+        }
         enforceLimit(p);
     }
 
@@ -337,61 +677,127 @@ public final class SimplePlaytimeLimiter extends JavaPlugin {
     public void onQuit(Player p) {
         UUID id = p.getUniqueId();
 
-        Long start = sessionStart.remove(id);
-        if (start == null) {
-            return;
-        }
+        deadlines.cancel(id);
+        uiTicker.remove(id);
+        activity.remove(id);
+
+        // a session that crossed midnight is split at the day start
+        splitSession(id);
 
-        long minutes = Math.max(0, (System.currentTimeMillis() - start) / 60000L);
+        // the sub minute rest is kept for a rejoin later today
+        int minutes = sessions.stop(id, store.getEpochDay());
         if (minutes > 0) {
-            store.addMinutesToday(id, (int) minutes);
+            store.addMinutesToday(id, minutes);
         }
 
         hideUi(p);
+        policies.remove(id);
+    }
+
+    // rechecks every online player, used when the limit, the whitelist or the day changes
+    // cached policies are dropped first so they pick up the new config
+    void enforceAll() {
+        policies.clear();
+        for (Player p : Bukkit.getOnlinePlayers()) {
+            scheduleEnforce(p);
+        }
+    }
+
+    // runs enforceLimit on the thread that owns the player
+    void scheduleEnforce(Player p) {
+        tasks.runForPlayer(p, () -> enforceLimit(p));
+    }
+
+    // called by the deadline queue when a player's next warning or limit is due
+    private void onDeadline(UUID id) {
+        Player p = Bukkit.getPlayer(id);
+        if (p != null && p.isOnline()) {
+            scheduleEnforce(p);
+        }
+    }
+
+    // computes a player's policy from permissions and config, only called by the policy cache
+    private PolicyCache.Policy resolvePolicy(Player p) {
+        UUID id = p.getUniqueId();
+
+        // remember the permission so the next login can be checked before the player joins
+        boolean bypass = p.hasPermission("spl.bypass");
+        knownBypass.update(id, bypass);
+
+        return new PolicyCache.Policy(bypass || whitelist.contains(id), dailyLimitMin);
     }
 
     // checks remaining time sends warnings and kicks when the daily limit is reached
+    // then schedules the player's next deadline
+    // must run on the thread that owns the player, other threads go through scheduleEnforce
     public void enforceLimit(Player p) {
+        long start = System.nanoTime();
+        try {
+            checkLimit(p);
+        } finally {
+            metrics.enforce.since(start);
+        }
+    }
+
+    private void checkLimit(Player p) {
         UUID id = p.getUniqueId();
+        PolicyCache.Policy policy = policies.get(p);
 
         // unlimited players skip limit logic but still get ui updates
-        if (p.hasPermission("spl.bypass") || whitelist.contains(id)) {
+        if (policy.unlimited()) {
+            deadlines.cancel(id);
             updateUi(p, 0, true);
             return;
         }
 
-        long now = System.currentTimeMillis();
+        long now = deadlineMillis();
+        long usedMs = store.usedMillisToday(id, sessions) + getRemoteMinutes(id) * 60000L;
 
-        int used = store.getMinutesToday(id);
-        Long start = sessionStart.get(id);
-        if (start != null) {
-            used += (int) ((now - start) / 60000L);
-        }
-
-        int remaining = Math.max(0, dailyLimitMin - used);
+        int remaining = Math.max(0, policy.limit() - (int) (usedMs / 60000L));
+        long remainingMs = policy.limit() * 60000L - usedMs;
 
         // update ui immediately so it feels responsive
         updateUi(p, remaining, false);
 
+        // every threshold at or above the remaining time counts as reached, one message covers them all
+        boolean warnNow = false;
         for (int w : warnAt) {
-            if (remaining == w && !store.warnedToday(id, w)) {
-                p.sendMessage("§eDu hast noch §6" + w + "§e Minuten für heute.");
+            if (remaining > 0 && remaining <= w && !store.warnedToday(id, w)) {
                 store.markWarnedToday(id, w);
+                warnNow = true;
+            }
+        }
+
+        if (warnNow) {
+            p.sendMessage("§eDu hast noch §6" + remaining + "§e Minuten für heute.");
+
+            if (uiActionbar) {
+                p.sendActionBar(Component.text(
+                    uiActionbarMsg.replace("{remaining}", String.valueOf(remaining))
+                ));
+            }
+        }
 
-                if (uiActionbar) {
-                    p.sendActionBar(Component.text(
-                        uiActionbarMsg.replace("{remaining}", String.valueOf(remaining))
-                    ));
+        if (remaining > 0) {
+            // the limit itself or the next threshold that has not been shown yet, whichever comes first
+            long next = remainingMs;
+            for (int w : warnAt) {
+                long atMs = w * 60000L;
+                if (atMs < remainingMs && !store.warnedToday(id, w)) {
+                    next = Math.min(next, remainingMs - atMs);
                 }
             }
+            deadlines.schedule(id, now + Math.max(1L, next));
+            return;
         }
 
-        if (remaining <= 0) {
-            String km = getKickMsg();
-            String b = getBroadcastMsg().replace("{player}", p.getName());
+        deadlines.cancel(id);
 
+        String km = getKickMsg();
+        if (shouldBroadcast(id)) {
+            String b = getBroadcastMsg().replace("{player}", p.getName());
             Bukkit.getOnlinePlayers().forEach(op -> op.sendMessage(b));
-            p.kick(Component.text(km));
         }
+        p.kick(Component.text(km));
     }
 }
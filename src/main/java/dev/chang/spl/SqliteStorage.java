@@ -0,0 +1,212 @@
+package dev.chang.spl;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/*
+  embedded sqlite backend with one row per player and day
+  the primary key on day and uuid keeps per day and per player lookups indexed
+  each flush writes all changed rows as batched upserts in a single transaction
+  uses the sqlite driver that paper ships with so no extra dependency is needed
+*/
+final class SqliteStorage implements StorageBackend {
+
+    // main plugin reference for logging
+    private final SimplePlaytimeLimiter plugin;
+
+    // database file on disk
+    private final File file;
+
+    // pulls pending changes from the store
+    private final Supplier<Changes> changes;
+
+    // single connection, guarded by this backend
+    private Connection conn;
+
+    // background writer that merges save requests into one transaction
+    private WriteBehindSaver saver;
+
+    // changes taken from the store whose transaction failed, retried on the next flush
+    private final List<DayCounters> unsaved = new ArrayList<>();
+
+    // save requests inside this window are merged into a single transaction
+    private static final long SAVE_COALESCE_MS = 2_000L;
+
+    private static final String UPSERT =
+        "INSERT INTO playtime (day, uuid, minutes, warned) VALUES (?, ?, ?, ?) "
+            + "ON CONFLICT (day, uuid) DO UPDATE SET minutes = excluded.minutes, warned = excluded.warned";
+
+    // migration keeps whichever value is higher so nothing counted in the meantime is lost
+    private static final String MERGE =
+        "INSERT INTO playtime (day, uuid, minutes, warned) VALUES (?, ?, ?, ?) "
+            + "ON CONFLICT (day, uuid) DO UPDATE SET minutes = max(minutes, excluded.minutes), warned = warned | excluded.warned";
+
+    SqliteStorage(SimplePlaytimeLimiter plugin, File folder, Supplier<Changes> changes) {
+        this.plugin = plugin;
+        this.file = new File(folder, "playtime.db");
+        this.changes = changes;
+    }
+
+    @Override
+    public synchronized long open() throws IOException {
+        try {
+            Class.forName("org.sqlite.JDBC");
+            this.conn = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
+
+            // warned holds the warning bitmask with the stable bits of warnbits.yml
+            try (Statement st = conn.createStatement()) {
+                st.execute("PRAGMA journal_mode = WAL");
+                st.execute("PRAGMA synchronous = NORMAL");
+                st.execute("CREATE TABLE IF NOT EXISTS playtime ("
+                    + "day INTEGER NOT NULL, "
+                    + "uuid TEXT NOT NULL, "
+                    + "minutes INTEGER NOT NULL, "
+                    + "warned INTEGER NOT NULL DEFAULT 0, "
+                    + "PRIMARY KEY (day, uuid))");
+                st.execute("CREATE INDEX IF NOT EXISTS playtime_uuid ON playtime (uuid, day)");
+            }
+            conn.setAutoCommit(false);
+        } catch (ClassNotFoundException | SQLException e) {
+            throw new IOException("could not open " + file.getName() + ": " + e.getMessage(), e);
+        }
+
+        this.saver = new WriteBehindSaver(plugin.getLogger(), file.getName(), this::flush, SAVE_COALESCE_MS,
+            plugin.getMetrics().save);
+
+        // sqlite commits atomically so there is no journal sequence to resume from
+        return 0L;
+    }
+
+    @Override
+    public synchronized DayCounters loadDay(LocalDate day) throws IOException {
+        DayCounters c = new DayCounters(day);
+
+        try (PreparedStatement ps = conn.prepareStatement("SELECT uuid, minutes, warned FROM playtime WHERE day = ?")) {
+            ps.setLong(1, day.toEpochDay());
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    c.load(UUID.fromString(rs.getString(1)), rs.getInt(2), rs.getInt(3));
+                }
+            }
+            conn.commit();
+        } catch (SQLException | IllegalArgumentException e) {
+            throw new IOException("could not read day " + c.key + ": " + e.getMessage(), e);
+        }
+
+        return c;
+    }
+
+    @Override
+    public synchronized DayCounters loadPlayer(UUID id, LocalDate day) throws IOException {
+        DayCounters c = new DayCounters(day, 2);
+
+        try (PreparedStatement ps = conn.prepareStatement("SELECT minutes, warned FROM playtime WHERE day = ? AND uuid = ?")) {
+            ps.setLong(1, day.toEpochDay());
+            ps.setString(2, id.toString());
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    c.load(id, rs.getInt(1), rs.getInt(2));
+                }
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            throw new IOException("could not read day " + day + ": " + e.getMessage(), e);
+        }
+
+        // rows of a failed transaction are newer than the table, the last retry wins
+        for (DayCounters pending : unsaved) {
+            if (pending.day.equals(day) && pending.contains(id)) {
+                c.load(id, pending.minutes(id), pending.warned(id));
+            }
+        }
+
+        return c;
+    }
+
+    @Override
+    public void requestSave() {
+        saver.requestSave();
+    }
+
+    @Override
+    public synchronized void importDay(DayCounters day) throws IOException {
+        try {
+            upsert(MERGE, List.of(day));
+            conn.commit();
+        } catch (SQLException e) {
+            rollback();
+            throw new IOException("could not import day " + day.key + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void close() {
+        saver.close();
+
+        synchronized (this) {
+            try {
+                conn.close();
+            } catch (SQLException e) {
+                plugin.getLogger().warning("could not close " + file.getName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // writes all changed rows in one transaction, runs on the writer thread
+    // changes are pulled before taking this lock so the lock order is always store then backend
+    private void flush() throws IOException {
+        Changes c = changes.get();
+
+        synchronized (this) {
+            unsaved.addAll(c.days());
+
+            try {
+                upsert(UPSERT, unsaved);
+                conn.commit();
+                unsaved.clear();
+            } catch (SQLException e) {
+                rollback();
+                throw new IOException(e.getMessage(), e);
+            }
+        }
+    }
+
+    private void upsert(String sql, List<DayCounters> days) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (DayCounters day : days) {
+                for (int i = 0; i < day.capacity(); i++) {
+                    UUID id = day.keyAt(i);
+                    if (id == null) {
+                        continue;
+                    }
+
+                    ps.setLong(1, day.day.toEpochDay());
+                    ps.setString(2, id.toString());
+                    ps.setInt(3, day.minutesAt(i));
+                    ps.setInt(4, day.warnedAt(i));
+                    ps.addBatch();
+                }
+            }
+            ps.executeBatch();
+        }
+    }
+
+    private void rollback() {
+        try {
+            conn.rollback();
+        } catch (SQLException e) {
+            plugin.getLogger().warning("could not roll back " + file.getName() + ": " + e.getMessage());
+        }
+    }
+}
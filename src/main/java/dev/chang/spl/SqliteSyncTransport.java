@@ -0,0 +1,127 @@
+package dev.chang.spl;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/*
+  shared sqlite file as transport for servers on the same machine or a shared disk
+  every published delta is one row, the autoincrement row id is the cursor
+  uses the sqlite driver that paper ships with and waits on locks held by other servers
+*/
+final class SqliteSyncTransport implements SyncTransport {
+
+    // shared database file
+    private final File file;
+
+    // single connection, guarded by this transport
+    private Connection conn;
+
+    SqliteSyncTransport(File file) {
+        this.file = file;
+    }
+
+    synchronized void open() throws IOException {
+        try {
+            Class.forName("org.sqlite.JDBC");
+
+            File dir = file.getAbsoluteFile().getParentFile();
+            if (dir != null && !dir.exists() && !dir.mkdirs()) {
+                throw new IOException("could not create " + dir);
+            }
+
+            this.conn = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
+            try (Statement st = conn.createStatement()) {
+                st.execute("PRAGMA journal_mode = WAL");
+                st.execute("PRAGMA busy_timeout = 5000");
+                st.execute("CREATE TABLE IF NOT EXISTS deltas ("
+                    + "id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                    + "node TEXT NOT NULL, "
+                    + "day INTEGER NOT NULL, "
+                    + "uuid TEXT NOT NULL, "
+                    + "minutes INTEGER NOT NULL)");
+                st.execute("CREATE INDEX IF NOT EXISTS deltas_day ON deltas (day)");
+            }
+            conn.setAutoCommit(false);
+        } catch (ClassNotFoundException | SQLException e) {
+            throw new IOException("could not open " + file.getName() + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized void publish(String node, List<Delta> deltas) throws IOException {
+        try (PreparedStatement ps = conn.prepareStatement("INSERT INTO deltas (node, day, uuid, minutes) VALUES (?, ?, ?, ?)")) {
+            for (Delta d : deltas) {
+                ps.setString(1, node);
+                ps.setLong(2, d.epochDay());
+                ps.setString(3, d.id().toString());
+                ps.setInt(4, d.minutes());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+            conn.commit();
+        } catch (SQLException e) {
+            rollback();
+            throw new IOException("could not publish deltas: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized Batch poll(String node, long cursor) throws IOException {
+        List<Delta> out = new ArrayList<>();
+        long last = cursor;
+
+        try (PreparedStatement ps = conn.prepareStatement("SELECT id, node, day, uuid, minutes FROM deltas WHERE id > ? ORDER BY id")) {
+            ps.setLong(1, cursor);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    last = rs.getLong(1);
+                    if (!node.equals(rs.getString(2))) {
+                        out.add(new Delta(UUID.fromString(rs.getString(4)), rs.getLong(3), rs.getInt(5)));
+                    }
+                }
+            }
+            conn.commit();
+        } catch (SQLException | IllegalArgumentException e) {
+            rollback();
+            throw new IOException("could not read deltas: " + e.getMessage(), e);
+        }
+
+        return new Batch(out, last);
+    }
+
+    @Override
+    public synchronized void prune(long beforeEpochDay) throws IOException {
+        try (PreparedStatement ps = conn.prepareStatement("DELETE FROM deltas WHERE day < ?")) {
+            ps.setLong(1, beforeEpochDay);
+            ps.executeUpdate();
+            conn.commit();
+        } catch (SQLException e) {
+            rollback();
+            throw new IOException("could not prune deltas: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            conn.close();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    private void rollback() {
+        try {
+            conn.rollback();
+        } catch (SQLException ignored) {
+        }
+    }
+}
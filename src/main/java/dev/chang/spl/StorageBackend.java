@@ -0,0 +1,44 @@
+package dev.chang.spl;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+/*
+  persistence backend behind PlayerDataStore
+  the store keeps the live day in memory and backends only load days and persist changes
+  implementations write on their own background thread and never block the main thread
+*/
+interface StorageBackend {
+
+    // changed entries handed from the store to a backend
+    // days are ordered oldest first and seq is the last change included
+    record Changes(List<DayCounters> days, long seq) {
+    }
+
+    // opens files or connections and returns the last change sequence already persisted
+    long open() throws IOException;
+
+    // all stored counters for one day including archived days, may block on disk
+    DayCounters loadDay(LocalDate day) throws IOException;
+
+    // stored entry of one player on one day as a table holding at most that player
+    // used for lazy loading at pre login and for past day lookups, may block on disk
+    DayCounters loadPlayer(UUID id, LocalDate day) throws IOException;
+
+    // called under the store lock for every single change
+    // backends that log individual changes append them here
+    default void recorded(long seq, UUID id, LocalDate day, int delta, int warnedMask) {
+    }
+
+    // asks the backend to persist pending changes soon
+    void requestSave();
+
+    // merges one imported day into the stored data keeping the higher minute value
+    // used by the one shot migration from players.yml
+    void importDay(DayCounters day) throws IOException;
+
+    // persists everything and releases resources, blocks until done
+    void close();
+}
@@ -0,0 +1,31 @@
+package dev.chang.spl;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+
+/*
+  carries minute deltas between servers of one network
+  every node publishes its own deltas and reads everything other nodes published after a cursor
+  implementations must keep the order of a node's deltas and hand out cursors that only grow
+*/
+interface SyncTransport {
+
+    // minutes one node added for a player on a day
+    record Delta(UUID id, long epochDay, int minutes) {
+    }
+
+    // deltas of other nodes and the cursor to continue from
+    record Batch(List<Delta> deltas, long cursor) {
+    }
+
+    void publish(String node, List<Delta> deltas) throws IOException;
+
+    Batch poll(String node, long cursor) throws IOException;
+
+    // drops deltas of days before the given one
+    default void prune(long beforeEpochDay) throws IOException {
+    }
+
+    void close();
+}
@@ -0,0 +1,53 @@
+package dev.chang.spl;
+
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+
+/*
+  the scheduling calls the plugin needs, with one implementation for paper and one for folia
+  global work runs on the main thread on paper and on the global region on folia
+  player work runs where the player is ticked, which is the main thread on paper and the entity scheduler on folia
+*/
+interface TaskScheduler {
+
+    // handle for a repeating or delayed task
+    interface Task {
+        void cancel();
+    }
+
+    // picks the folia scheduler when the regionized server classes are present
+    static TaskScheduler create(Plugin plugin) {
+        try {
+            Class.forName("io.papermc.paper.threadedregions.RegionizedServer");
+            return new FoliaTaskScheduler(plugin);
+        } catch (ClassNotFoundException e) {
+            return new PaperTaskScheduler(plugin);
+        }
+    }
+
+    boolean isFolia();
+
+    // global work
+    void runGlobal(Runnable r);
+
+    Task runGlobalLater(Runnable r, long delayTicks);
+
+    Task runGlobalTimer(Runnable r, long delayTicks, long periodTicks);
+
+    // work off any tick thread
+    void runAsync(Runnable r);
+
+    // work that touches one player, runs inline when already on the right thread
+    // dropped if the player leaves before it runs
+    void runForPlayer(Player p, Runnable r);
+
+    // replies to a command sender from whatever thread finished the work
+    default void runForSender(CommandSender sender, Runnable r) {
+        if (sender instanceof Player p) {
+            runForPlayer(p, r);
+        } else {
+            runGlobal(r);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package dev.chang.spl;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+/*
+  where the plugin reads the time of day and measures played time
+  the system clocks in production, the load harness installs a virtual clock before the plugin is enabled
+  so whole days can be simulated in seconds
+  cost measurements like metrics, tick budgets and write latency keep using System.nanoTime because they measure real work
+*/
+interface TimeSource {
+
+    TimeSource SYSTEM = new TimeSource() {
+        @Override
+        public long millis() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public long nanos() {
+            return System.nanoTime();
+        }
+    };
+
+    // wall clock in epoch millis
+    long millis();
+
+    // monotonic clock for elapsed time, only differences are meaningful
+    long nanos();
+
+    // longest real wait before a background watcher looks at the wall clock again
+    default long maxWaitMillis() {
+        return 60_000L;
+    }
+
+    default Instant instant() {
+        return Instant.ofEpochMilli(millis());
+    }
+
+    default LocalDate today(ZoneId zone) {
+        return LocalDate.ofInstant(instant(), zone);
+    }
+}
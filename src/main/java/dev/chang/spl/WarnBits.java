@@ -0,0 +1,125 @@
+package dev.chang.spl;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+
+/*
+  stable bit for every warning threshold in the warned masks of all backends, the journal and the archive
+  a threshold keeps its bit for as long as the data folder exists and new thresholds take the next free bit,
+  so reordering or extending warnings never changes what stored masks mean
+  the assignment lives in warnbits.yml next to the data and is on disk before a new bit is used
+  the first assignment follows the warnings list, which is how masks were stored before this file existed
+*/
+final class WarnBits {
+
+    // a mask is one int
+    private static final int MAX_BITS = 32;
+
+    private final Logger logger;
+
+    // warnbits.yml on disk, null keeps the assignment in memory only
+    private final File file;
+
+    // threshold minutes by bit, replaced as a whole so lookups need no lock
+    private volatile int[] values = new int[0];
+
+    WarnBits(Logger logger, File file) {
+        this.logger = logger;
+        this.file = file;
+
+        if (file != null && file.exists()) {
+            List<Integer> stored = YamlConfiguration.loadConfiguration(file).getIntegerList("bits");
+            int[] v = new int[Math.min(MAX_BITS, stored.size())];
+            for (int i = 0; i < v.length; i++) {
+                v[i] = stored.get(i);
+            }
+            this.values = v;
+        }
+    }
+
+    // gives every threshold a bit unless it has one, thresholds beyond 32 are never marked as sent
+    synchronized void register(List<Integer> thresholds) {
+        int[] current = values;
+        int[] next = current;
+
+        for (int w : thresholds) {
+            if (indexOf(next, w) >= 0) {
+                continue;
+            }
+            if (next.length >= MAX_BITS) {
+                logger.warning("no warning bit left for " + w + " minutes, it is sent again on every check");
+                continue;
+            }
+            next = Arrays.copyOf(next, next.length + 1);
+            next[next.length - 1] = w;
+        }
+
+        if (next == current) {
+            return;
+        }
+
+        // the file has to know a bit before any mask with it can be stored
+        if (file != null) {
+            try {
+                YamlConfiguration yaml = new YamlConfiguration();
+                List<Integer> list = new ArrayList<>(next.length);
+                for (int w : next) {
+                    list.add(w);
+                }
+                yaml.set("bits", list);
+                WriteBehindSaver.writeAtomically(file, yaml.saveToString());
+            } catch (IOException e) {
+                logger.warning("could not write " + file.getName() + ", new warning thresholds are not tracked: " + e.getMessage());
+                return;
+            }
+        }
+        values = next;
+    }
+
+    // bit of a threshold or zero if it has none, loops so the lookup does not box
+    int bit(int minutes) {
+        int i = indexOf(values, minutes);
+        return i < 0 ? 0 : 1 << i;
+    }
+
+    // mask of stored threshold minutes, thresholds seen for the first time get a bit so nothing is dropped
+    int mask(List<Integer> thresholds) {
+        int mask = 0;
+        for (int w : thresholds) {
+            int b = bit(w);
+            if (b == 0) {
+                register(List.of(w));
+                b = bit(w);
+            }
+            mask |= b;
+        }
+        return mask;
+    }
+
+    // threshold minutes of a mask in bit order
+    List<Integer> thresholds(int mask) {
+        int[] v = values;
+        List<Integer> list = new ArrayList<>();
+        for (int b = 0; b < v.length; b++) {
+            if ((mask & (1 << b)) != 0) {
+                list.add(v[b]);
+            }
+        }
+        return list;
+    }
+
+    private static int indexOf(int[] v, int minutes) {
+        for (int i = 0; i < v.length; i++) {
+            if (v[i] == minutes) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
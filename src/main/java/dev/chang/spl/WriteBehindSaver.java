@@ -0,0 +1,160 @@
+package dev.chang.spl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+  write behind persistence used by the storage backends
+  callers only mark the data dirty and one background thread runs the flush
+  save requests inside the coalesce window are merged into one write
+  file based backends write through writeAtomically so a crash never leaves a half written file
+*/
+final class WriteBehindSaver {
+
+    // one write of the current state, runs on the writer thread only
+    interface Flush {
+        void run() throws IOException;
+    }
+
+    // logger of the owning plugin for write failures
+    private final Logger logger;
+
+    // name of the written data for log messages
+    private final String name;
+
+    // writes the current state
+    private final Flush flush;
+
+    // delay between the first save request and the actual write
+    private final long coalesceMillis;
+
+    // single writer thread so writes never overlap
+    private final ScheduledExecutorService executor;
+
+    // duration of each write, null when not measured
+    private final Metrics.Histogram latency;
+
+    // set by callers when data changed since the last write
+    private final AtomicBoolean dirty = new AtomicBoolean(false);
+
+    // true while a delayed write is already queued
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    WriteBehindSaver(Logger logger, String name, Flush flush, long coalesceMillis) {
+        this(logger, name, flush, coalesceMillis, null);
+    }
+
+    WriteBehindSaver(Logger logger, String name, Flush flush, long coalesceMillis, Metrics.Histogram latency) {
+        this.logger = logger;
+        this.name = name;
+        this.flush = flush;
+        this.coalesceMillis = coalesceMillis;
+        this.latency = latency;
+
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "SimplePlaytimeLimiter-writer");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // marks data dirty and queues a write unless one is already pending
+    void requestSave() {
+        dirty.set(true);
+
+        if (scheduled.compareAndSet(false, true)) {
+            executor.schedule(() -> {
+                scheduled.set(false);
+                flushIfDirty();
+            }, coalesceMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // writes pending data now and blocks until it is on disk, the writer keeps running
+    void flush() {
+        try {
+            executor.submit(this::flushIfDirty).get(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            logger.warning("save of " + name + " failed: " + e.getMessage());
+        }
+    }
+
+    // writes pending data and stops the writer thread
+    // blocks until the final write is on disk
+    void close() {
+        dirty.set(true);
+
+        try {
+            executor.submit(this::flushIfDirty).get(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            logger.warning("final save of " + name + " failed: " + e.getMessage());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // runs on the writer thread only
+    private void flushIfDirty() {
+        if (!dirty.getAndSet(false)) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            flush.run();
+            if (latency != null) {
+                latency.since(start);
+            }
+        } catch (IOException e) {
+            // keep the data dirty so the next request retries the write
+            dirty.set(true);
+            logger.warning("could not save " + name + ": " + e.getMessage());
+        } catch (RuntimeException e) {
+            // a bug in a flush must not cancel the task silently or lose the pending changes
+            dirty.set(true);
+            logger.log(Level.SEVERE, "could not save " + name, e);
+        }
+    }
+
+    // writes to a temp file next to the target forces it to disk and swaps it into place
+    // returns the number of bytes written
+    static long writeAtomically(File target, String data) throws IOException {
+        File temp = new File(target.getParentFile(), target.getName() + ".tmp");
+        ByteBuffer buf = ByteBuffer.wrap(data.getBytes(StandardCharsets.UTF_8));
+
+        try (FileChannel ch = FileChannel.open(temp.toPath(),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buf.hasRemaining()) {
+                ch.write(buf);
+            }
+            ch.force(true);
+        }
+
+        try {
+            Files.move(temp.toPath(), target.toPath(),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return buf.limit();
+    }
+}
@@ -0,0 +1,333 @@
+package dev.chang.spl;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/*
+  default backend keeping all days in players.yml
+  keys are grouped by date with minutes under players and sent warning thresholds under warned
+  warnings are kept as minute values here and turned into masks through the stable bits of warnbits.yml
+  in journal mode every change is appended to players.journal and players.yml is only rewritten on compaction
+  days older than storage.retentionDays are moved into compressed monthly archives while saving
+*/
+final class YamlStorage implements StorageBackend {
+
+    // main plugin reference for config and logging
+    private final SimplePlaytimeLimiter plugin;
+
+    // players.yml and players.journal on disk
+    private final File file;
+    private final File journalFile;
+
+    // pulls pending changes from the store
+    private final Supplier<Changes> changes;
+
+    // yaml representation of all days, guarded by this backend
+    // filled from the pending parse on first use when journal mode is off
+    private YamlConfiguration yaml;
+    private CompletableFuture<YamlConfiguration> parsing;
+
+    // background writer used when journal mode is off
+    private WriteBehindSaver saver;
+
+    // optional append only journal, null when journal mode is off
+    private PlaytimeJournal journal;
+
+    // journal sequence folded into players.yml and the highest one replayed on top
+    private long snapshotSeq;
+    private long replayedSeq;
+
+    // archive for days outside the retention window
+    private final HistoryArchive archive;
+
+    // number of days kept in players.yml, zero keeps everything
+    private final int retentionDays;
+
+    // cutoff used by the last archive run so the scan only happens once per day
+    private LocalDate archivedBefore;
+
+    // save requests inside this window are merged into a single write
+    private static final long SAVE_COALESCE_MS = 2_000L;
+
+    YamlStorage(SimplePlaytimeLimiter plugin, File folder, Supplier<Changes> changes) {
+        this.plugin = plugin;
+        this.file = new File(folder, "players.yml");
+        this.journalFile = new File(folder, "players.journal");
+        this.changes = changes;
+        this.archive = new HistoryArchive(new File(folder, "archive"));
+        this.retentionDays = Math.max(0, plugin.getConfig().getInt("storage.retentionDays", 30));
+    }
+
+    @Override
+    public synchronized long open() {
+        if (!plugin.getConfig().getBoolean("storage.journal", false)) {
+            // a yaml file can only be parsed whole, so that happens off the main thread
+            // and the first lookup or save waits for it
+            this.parsing = CompletableFuture.supplyAsync(() -> YamlConfiguration.loadConfiguration(file));
+            this.saver = new WriteBehindSaver(plugin.getLogger(), file.getName(),
+                this::write, SAVE_COALESCE_MS, plugin.getMetrics().save);
+            return 0L;
+        }
+
+        // journal replay needs the snapshot sequence before the store hands out new ones
+        this.yaml = YamlConfiguration.loadConfiguration(file);
+        this.snapshotSeq = yaml.getLong("journalSeq", 0L);
+        this.replayedSeq = snapshotSeq;
+
+        openJournal();
+        if (journal == null) {
+            this.saver = new WriteBehindSaver(plugin.getLogger(), file.getName(),
+                this::write, SAVE_COALESCE_MS, plugin.getMetrics().save);
+        }
+
+        return replayedSeq;
+    }
+
+    // opens the journal and replays everything newer than the snapshot
+    // falls back to plain write behind saves if the journal cannot be used
+    private void openJournal() {
+        try {
+            PlaytimeJournal j = new PlaytimeJournal(
+                plugin.getLogger(),
+                journalFile,
+                file,
+                this::serialize,
+                plugin.getConfig().getLong("storage.journalCommitMillis", 1000L),
+                plugin.getConfig().getLong("storage.journalCompactBytes", 1_048_576L)
+            );
+
+            j.replay(this::applyJournalRecord);
+            this.journal = j;
+        } catch (IOException e) {
+            plugin.getLogger().warning("could not open " + journalFile.getName() + ", using plain saves: " + e.getMessage());
+        }
+    }
+
+    // applies one replayed record on top of the loaded snapshot
+    private void applyJournalRecord(long seq, UUID id, long epochDay, int delta, int warnedMask) {
+        // records up to the snapshot sequence are already part of players.yml
+        if (seq <= snapshotSeq) {
+            return;
+        }
+        replayedSeq = Math.max(replayedSeq, seq);
+
+        String day = "date." + LocalDate.ofEpochDay(epochDay);
+
+        if (delta != 0) {
+            String k = day + ".players." + id;
+            yaml.set(k, Math.max(0, yaml.getInt(k, 0) + delta));
+        }
+
+        if (warnedMask != 0) {
+            String k = day + ".warned." + id;
+            WarnBits bits = plugin.getWarnBits();
+            int mask = bits.mask(yaml.getIntegerList(k)) | warnedMask;
+            yaml.set(k, bits.thresholds(mask));
+        }
+    }
+
+    @Override
+    public DayCounters loadDay(LocalDate day) throws IOException {
+        synchronized (this) {
+            YamlConfiguration y = yaml();
+            if (y.isConfigurationSection("date." + day)) {
+                return readDay(y, day, plugin.getWarnBits());
+            }
+        }
+
+        DayCounters archived = archive.readDay(day);
+        return archived != null ? archived : new DayCounters(day);
+    }
+
+    // the parsed players.yml tree, waiting for the background parse if it is still running
+    private YamlConfiguration yaml() {
+        if (yaml == null) {
+            yaml = parsing.join();
+            parsing = null;
+        }
+        return yaml;
+    }
+
+    @Override
+    public DayCounters loadPlayer(UUID id, LocalDate day) throws IOException {
+        DayCounters c = new DayCounters(day, 2);
+        WarnBits bits = plugin.getWarnBits();
+
+        synchronized (this) {
+            YamlConfiguration y = yaml();
+            String k = "date." + c.key;
+            if (y.isConfigurationSection(k)) {
+                int minutes = y.getInt(k + ".players." + id, 0);
+                int warned = bits.mask(y.getIntegerList(k + ".warned." + id));
+                if (minutes != 0 || warned != 0) {
+                    c.load(id, minutes, warned);
+                }
+                return c;
+            }
+        }
+
+        DayCounters archived = archive.readDay(day);
+        if (archived != null && archived.contains(id)) {
+            c.load(id, archived.minutes(id), archived.warned(id));
+        }
+        return c;
+    }
+
+    @Override
+    public void recorded(long seq, UUID id, LocalDate day, int delta, int warnedMask) {
+        if (journal != null) {
+            journal.append(seq, id, day.toEpochDay(), delta, warnedMask);
+        }
+    }
+
+    // in journal mode records are already committed by the journal thread
+    @Override
+    public void requestSave() {
+        if (journal == null) {
+            saver.requestSave();
+        }
+    }
+
+    @Override
+    public void importDay(DayCounters day) throws IOException {
+        throw new IOException("players.yml is already the active backend");
+    }
+
+    @Override
+    public void close() {
+        if (journal != null) {
+            journal.close();
+        } else {
+            saver.close();
+        }
+    }
+
+    // applies pending changes to the yaml tree and serializes it
+    // changes are pulled before taking this lock so the lock order is always store then backend
+    // writes the whole tree to players.yml, runs on the writer thread
+    private void write() throws IOException {
+        plugin.getMetrics().saveBytes.record(WriteBehindSaver.writeAtomically(file, serialize()));
+    }
+
+    private String serialize() {
+        Changes c = changes.get();
+
+        synchronized (this) {
+            YamlConfiguration yaml = yaml();
+            WarnBits bits = plugin.getWarnBits();
+            for (DayCounters day : c.days()) {
+                writeDay(yaml, day, bits);
+            }
+
+            // the last entry is always the live day
+            archiveOldDays(c.days().get(c.days().size() - 1).day);
+
+            if (journal != null) {
+                yaml.set("journalSeq", c.seq());
+            }
+            return yaml.saveToString();
+        }
+    }
+
+    // moves days before the retention window out of the yaml tree into the archive
+    // the archive is on disk before the days are dropped so a crash can only duplicate them
+    private void archiveOldDays(LocalDate today) {
+        if (retentionDays == 0) {
+            return;
+        }
+
+        LocalDate cutoff = today.minusDays(retentionDays);
+        if (cutoff.equals(archivedBefore)) {
+            return;
+        }
+
+        List<DayCounters> old = new ArrayList<>();
+        for (String key : dayKeys(yaml)) {
+            try {
+                LocalDate day = LocalDate.parse(key);
+                if (day.isBefore(cutoff)) {
+                    old.add(readDay(yaml, day, plugin.getWarnBits()));
+                }
+            } catch (RuntimeException ignored) {
+            }
+        }
+
+        if (!old.isEmpty()) {
+            try {
+                archive.append(old);
+            } catch (IOException e) {
+                plugin.getLogger().warning("could not archive old days, keeping them in players.yml: " + e.getMessage());
+                return;
+            }
+
+            for (DayCounters c : old) {
+                yaml.set("date." + c.key, null);
+            }
+            plugin.getLogger().info("archived " + old.size() + " day(s) older than " + cutoff);
+        }
+
+        archivedBefore = cutoff;
+    }
+
+    // date keys of all days stored in a players.yml tree
+    static Set<String> dayKeys(YamlConfiguration source) {
+        ConfigurationSection dates = source.getConfigurationSection("date");
+        return dates == null ? Set.of() : dates.getKeys(false);
+    }
+
+    // builds the counter table for a day from its yaml section
+    static DayCounters readDay(YamlConfiguration source, LocalDate day, WarnBits bits) {
+        DayCounters c = new DayCounters(day);
+
+        ConfigurationSection players = source.getConfigurationSection("date." + c.key + ".players");
+        if (players != null) {
+            for (String k : players.getKeys(false)) {
+                try {
+                    c.load(UUID.fromString(k), players.getInt(k), 0);
+                } catch (IllegalArgumentException ignored) {
+                }
+            }
+        }
+
+        ConfigurationSection warned = source.getConfigurationSection("date." + c.key + ".warned");
+        if (warned != null) {
+            for (String k : warned.getKeys(false)) {
+                try {
+                    UUID id = UUID.fromString(k);
+                    c.load(id, c.minutes(id), bits.mask(warned.getIntegerList(k)));
+                } catch (IllegalArgumentException ignored) {
+                }
+            }
+        }
+
+        return c;
+    }
+
+    // writes all entries of a day table into the yaml tree
+    static void writeDay(YamlConfiguration target, DayCounters c, WarnBits bits) {
+        String players = "date." + c.key + ".players.";
+        String warned = "date." + c.key + ".warned.";
+
+        for (int i = 0; i < c.capacity(); i++) {
+            UUID id = c.keyAt(i);
+            if (id == null) {
+                continue;
+            }
+
+            target.set(players + id, c.minutesAt(i));
+            if (c.warnedAt(i) != 0) {
+                target.set(warned + id, bits.thresholds(c.warnedAt(i)));
+            }
+        }
+    }
+}